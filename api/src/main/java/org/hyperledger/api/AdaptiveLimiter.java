@@ -0,0 +1,147 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of transactions in flight and adapts the limit to the network, in the manner of TCP Vegas.
+ * The shortest confirmation latency observed estimates the latency without queueing. If the latency of confirmations
+ * indicates fewer than alpha transactions queued in the network the limit grows by one, if more than beta it shrinks
+ * by one. Rejections and timeouts cut the limit multiplicatively.
+ */
+public class AdaptiveLimiter {
+    private static final int ALPHA = 3;
+    private static final int BETA = 6;
+    private static final double BACKOFF = 0.9;
+    private static final int MIN_RTT_WINDOW = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit; // guarded by this
+    private int inFlight; // guarded by this
+    private long minRtt = Long.MAX_VALUE; // guarded by this
+    private long windowMinRtt = Long.MAX_VALUE; // guarded by this
+    private int samples; // guarded by this
+
+    /**
+     * @param initialLimit - limit to start with
+     * @param minLimit     - the limit never drops below, at least 1
+     * @param maxLimit     - the limit never grows above
+     */
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Take a slot without waiting
+     *
+     * @return true if a slot was taken and has to be released by one of the on... methods
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Take a slot, waiting at most timeout for one to become free
+     *
+     * @return true if a slot was taken and has to be released by one of the on... methods
+     */
+    public synchronized boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (inFlight >= (int) limit) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Release a slot of a transaction confirmed
+     *
+     * @param latency - time from sending to confirmation
+     * @param unit    - unit of the latency
+     */
+    public synchronized void onSuccess(long latency, TimeUnit unit) {
+        long rtt = unit.toNanos(latency);
+        windowMinRtt = Math.min(windowMinRtt, rtt);
+        if (++samples >= MIN_RTT_WINDOW) {
+            // forget old minima so a lasting change of the network is followed
+            minRtt = windowMinRtt;
+            windowMinRtt = Long.MAX_VALUE;
+            samples = 0;
+        } else {
+            minRtt = Math.min(minRtt, rtt);
+        }
+        double queued = limit * (1 - (double) minRtt / Math.max(rtt, 1));
+        if (queued < ALPHA) {
+            setLimit(limit + 1);
+        } else if (queued > BETA) {
+            setLimit(limit - 1);
+        }
+        release();
+    }
+
+    /**
+     * Release a slot of a transaction rejected or timed out, a sign of overload
+     */
+    public synchronized void onDropped() {
+        setLimit(limit * BACKOFF);
+        release();
+    }
+
+    /**
+     * Release a slot without adapting the limit, e.g. if the transaction failed for reasons unrelated to load
+     */
+    public synchronized void onIgnore() {
+        release();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void setLimit(double newLimit) {
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveLimiter{limit=" + (int) limit + ", inFlight=" + inFlight + "}";
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.api;
+
+import java.util.Collections;
+import java.util.Objects;
+
+/**
+ * A transaction listener forwarding each transaction as a batch of one, the default batch listener of {@link HLAPI}.
+ * Adapters of the same batch listener are equal.
+ */
+final class BatchAdapter implements TransactionListener {
+    private final BatchTransactionListener listener;
+
+    BatchAdapter(BatchTransactionListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void process(HLAPITransaction t) throws HLAPIException {
+        listener.process(Collections.singletonList(t), t.getBlockID(), 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return listener.equals(((BatchAdapter) o).listener);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(listener);
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.api;
+
+import org.hyperledger.block.BID;
+
+import java.util.List;
+
+/**
+ * Listener for the transactions of a block, delivered in one call per block
+ */
+public interface BatchTransactionListener {
+    /**
+     * Process the transactions of a block
+     *
+     * @param transactions - transactions of the block in block order
+     * @param blockID      - ID of the block
+     * @param height       - height of the block, 0 if not known
+     * @throws HLAPIException
+     */
+    void process(List<HLAPITransaction> transactions, BID blockID, int height) throws HLAPIException;
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api;
+
+/**
+ * Listener interface for events emitted by chaincode
+ */
+public interface ChaincodeEventListener {
+    /**
+     * Process a chaincode event
+     *
+     * @param chaincodeID - the chaincode that emitted the event
+     * @param txID        - the transaction that emitted the event
+     * @param eventName   - name given to the event by the chaincode
+     * @param payload     - payload of the event, shared by all listeners the event is delivered to
+     */
+    void chaincodeEvent(String chaincodeID, String txID, String eventName, byte[] payload);
+}
@@ -0,0 +1,410 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.api;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.hyperledger.common.Hash;
+import org.hyperledger.common.TimingWheel;
+import org.hyperledger.transaction.TID;
+import org.hyperledger.transaction.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tracks transactions until they are confirmed in a block of the trunk, rejected or timed out.
+ * Registers itself as trunk and reject listener of the API it tracks confirmations of.
+ * Depth counts the blocks observed, the block including a transaction is depth 1.
+ */
+public class ConfirmationTracker implements TrunkListener, RejectListener {
+    private static final Logger log = LoggerFactory.getLogger(ConfirmationTracker.class);
+    private static final TimingWheel defaultWheel = new TimingWheel(100, TimeUnit.MILLISECONDS, 512);
+    private static final Executor defaultExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("hlapi-admission-%d")
+            .build());
+
+    private final HLAPI api;
+    private final TimingWheel wheel;
+    private final Map<TID, Pending> pending = new ConcurrentHashMap<>();
+    private final PriorityQueue<Pending> deep = new PriorityQueue<>((a, b) -> Long.compare(a.confirmedAt, b.confirmedAt)); // guarded by this
+    private long blocksSeen; // guarded by this
+    private volatile AdaptiveLimiter limiter;
+    private volatile Executor executor = defaultExecutor;
+    private final Queue<Admission> waiting = new ArrayDeque<>(); // guarded by this
+
+    public ConfirmationTracker(HLAPI api) throws HLAPIException {
+        this(api, defaultWheel);
+    }
+
+    /**
+     * @param api   - the API to send transactions to and observe
+     * @param wheel - timing wheel for the timeouts
+     */
+    public ConfirmationTracker(HLAPI api, TimingWheel wheel) throws HLAPIException {
+        this.api = api;
+        this.wheel = wheel;
+        api.registerTrunkListener(this);
+        api.registerRejectListener(this);
+    }
+
+    /**
+     * Limit the transactions sent by this tracker and in flight. The limiter adapts to the confirmation latency,
+     * every failure to confirm a transaction counts as a sign of overload.
+     *
+     * @param limiter - the limiter, or null to send without limit
+     */
+    public void setLimiter(AdaptiveLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * Set the executor transactions waiting for admission are sent on, by default a shared pool of daemon threads
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Send a transaction and wait until it is included in a block
+     *
+     * @param transaction - a signed transaction
+     * @param timeout     - time to wait for the confirmation
+     * @param unit        - unit of the timeout
+     * @return future of the confirmed transaction, failed with HLAPIException if sending failed or the
+     * transaction was rejected, with TimeoutException if not confirmed in time or if the limiter did not admit
+     * the transaction in time
+     */
+    public CompletableFuture<HLAPITransaction> sendTransactionAndAwait(Transaction transaction, long timeout, TimeUnit unit) {
+        return sendTransactionAndAwait(transaction, 1, timeout, unit);
+    }
+
+    /**
+     * Send a transaction and wait until it is confirmed at depth. A transaction the limiter admits at once is sent on
+     * the calling thread, which blocks while sending. Others wait in a queue and are sent on the executor as soon as
+     * a transaction in flight completes, first in first out, so that the listener completing it is not held up.
+     *
+     * @param depth - number of blocks on the trunk from the block including the transaction up, at least 1
+     * @see #sendTransactionAndAwait(Transaction, long, TimeUnit)
+     */
+    public CompletableFuture<HLAPITransaction> sendTransactionAndAwait(Transaction transaction, int depth, long timeout, TimeUnit unit) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be positive");
+        }
+        AdaptiveLimiter limiter = this.limiter;
+        if (limiter == null) {
+            return send(transaction, depth, timeout, unit, null);
+        }
+        Admission admission = new Admission(transaction, depth, timeout, unit);
+        admission.expiry = wheel.schedule(() -> expire(admission, limiter), timeout, unit);
+        boolean admitted;
+        synchronized (this) {
+            admitted = waiting.isEmpty() && limiter.tryAcquire();
+            if (!admitted) {
+                waiting.add(admission);
+            }
+        }
+        if (admitted) {
+            admission.expiry.cancel();
+            return send(transaction, depth, timeout, unit, limiter);
+        }
+        if (admission.expiry.isExpired()) {
+            expire(admission, limiter);
+        }
+        // a slot may have been released before the admission was queued
+        admitWaiting();
+        return admission.future;
+    }
+
+    private void expire(Admission admission, AdaptiveLimiter limiter) {
+        boolean removed;
+        synchronized (this) {
+            removed = waiting.remove(admission);
+        }
+        if (removed) {
+            admission.future.completeExceptionally(
+                    new TimeoutException("Transaction " + admission.transaction.getID() + " not admitted by " + limiter));
+        }
+    }
+
+    // sends transactions waiting while the limiter has free slots, called whenever a slot is released
+    private void admitWaiting() {
+        Executor executor = this.executor;
+        while (true) {
+            Admission next;
+            AdaptiveLimiter limiter = this.limiter;
+            synchronized (this) {
+                next = waiting.peek();
+                if (next == null || (limiter != null && !limiter.tryAcquire())) {
+                    return;
+                }
+                waiting.poll();
+            }
+            next.expiry.cancel();
+            try {
+                executor.execute(() -> sendAdmitted(next, limiter));
+            } catch (RejectedExecutionException e) {
+                if (limiter != null) {
+                    limiter.onIgnore();
+                }
+                next.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void sendAdmitted(Admission admission, AdaptiveLimiter limiter) {
+        CompletableFuture<HLAPITransaction> confirmation;
+        try {
+            confirmation = send(admission.transaction, admission.depth, admission.timeout, admission.unit, limiter);
+        } catch (RuntimeException e) {
+            admission.future.completeExceptionally(e);
+            return;
+        }
+        confirmation.whenComplete((confirmed, error) -> {
+            if (error == null) {
+                admission.future.complete(confirmed);
+            } else {
+                admission.future.completeExceptionally(error);
+            }
+        });
+    }
+
+    // the limiter slot, if any, is taken and released once the confirmation completes
+    private CompletableFuture<HLAPITransaction> send(Transaction transaction, int depth, long timeout, TimeUnit unit,
+                                                     AdaptiveLimiter limiter) {
+        long start = System.nanoTime();
+        CompletableFuture<HLAPITransaction> confirmation;
+        try {
+            confirmation = awaitConfirmation(transaction.getID(), depth, timeout, unit);
+        } catch (RuntimeException e) {
+            if (limiter != null) {
+                limiter.onIgnore();
+                admitWaiting();
+            }
+            throw e;
+        }
+        if (limiter != null) {
+            confirmation.whenComplete((confirmed, error) -> {
+                if (error == null) {
+                    limiter.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                } else {
+                    limiter.onDropped();
+                }
+                admitWaiting();
+            });
+        }
+        try {
+            api.sendTransaction(transaction);
+        } catch (HLAPIException | RuntimeException e) {
+            fail(transaction.getID(), e instanceof HLAPIException ? e : new HLAPIException(e));
+        }
+        return confirmation;
+    }
+
+    /**
+     * Wait for a transaction sent elsewhere to be included in a block
+     *
+     * @see #awaitConfirmation(TID, int, long, TimeUnit)
+     */
+    public CompletableFuture<HLAPITransaction> awaitConfirmation(TID id, long timeout, TimeUnit unit) {
+        return awaitConfirmation(id, 1, timeout, unit);
+    }
+
+    /**
+     * Wait for a transaction sent elsewhere to be confirmed at depth. Only blocks observed from now on count,
+     * a transaction already on the trunk is not found. A transaction is tracked once, waiting again for a
+     * transaction tracked returns the same future.
+     *
+     * @param id      - the transaction ID
+     * @param depth   - number of blocks on the trunk from the block including the transaction up, at least 1
+     * @param timeout - time to wait for the confirmation
+     * @param unit    - unit of the timeout
+     * @return future of the confirmed transaction
+     */
+    public CompletableFuture<HLAPITransaction> awaitConfirmation(TID id, int depth, long timeout, TimeUnit unit) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be positive");
+        }
+        Pending added = new Pending(id, depth);
+        added.timeout = wheel.schedule(() -> fail(added, new TimeoutException("No confirmation for " + id + " after " + timeout + " " + unit)),
+                timeout, unit);
+        Pending tracked = pending.putIfAbsent(id, added);
+        if (tracked != null) {
+            added.timeout.cancel();
+            if (tracked.depth != depth) {
+                throw new IllegalArgumentException("Transaction " + id + " is already awaited at depth " + tracked.depth);
+            }
+            return tracked.future;
+        }
+        if (added.timeout.isExpired()) {
+            fail(added, new TimeoutException("No confirmation for " + id + " after " + timeout + " " + unit));
+        }
+        return added.future;
+    }
+
+    /**
+     * @return number of transactions awaiting confirmation
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * @return number of transactions waiting to be admitted by the limiter
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * Stop observing the API, transactions still awaited or waiting for admission are failed
+     */
+    public void close() {
+        api.removeTrunkListener(this);
+        api.removeRejectListener(this);
+        List<Admission> dropped;
+        synchronized (this) {
+            dropped = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+        for (Admission admission : dropped) {
+            admission.expiry.cancel();
+            admission.future.completeExceptionally(new HLAPIException("Confirmation tracker closed"));
+        }
+        for (TID id : pending.keySet()) {
+            fail(id, new HLAPIException("Confirmation tracker closed"));
+        }
+    }
+
+    @Override
+    public void trunkUpdate(List<HLAPIBlock> added) {
+        for (HLAPIBlock block : added) {
+            long seen;
+            synchronized (this) {
+                seen = ++blocksSeen;
+            }
+            for (HLAPITransaction transaction : block.getTransactions()) {
+                Pending p = pending.get(transaction.getID());
+                if (p != null) {
+                    included(p, transaction, seen);
+                }
+            }
+            completeDeep(seen);
+        }
+    }
+
+    private void included(Pending p, HLAPITransaction transaction, long seen) {
+        if (p.depth == 1) {
+            confirm(p, transaction);
+            return;
+        }
+        synchronized (this) {
+            if (p.transaction == null) {
+                p.transaction = transaction;
+                p.confirmedAt = seen + p.depth - 1;
+                deep.add(p);
+            }
+        }
+    }
+
+    private void completeDeep(long seen) {
+        while (true) {
+            Pending p;
+            synchronized (this) {
+                p = deep.peek();
+                if (p == null || p.confirmedAt > seen) {
+                    return;
+                }
+                deep.poll();
+            }
+            confirm(p, p.transaction);
+        }
+    }
+
+    private void confirm(Pending p, HLAPITransaction transaction) {
+        if (pending.remove(p.id, p)) {
+            p.timeout.cancel();
+            p.future.complete(transaction);
+        }
+    }
+
+    @Override
+    public void rejected(String command, Hash hash, String reason, int rejectionCode) {
+        TID id = hash instanceof TID ? (TID) hash : new TID(hash);
+        fail(id, new HLAPIException("Transaction " + id + " rejected: " + reason));
+    }
+
+    private void fail(TID id, Exception e) {
+        Pending p = pending.get(id);
+        if (p != null) {
+            fail(p, e);
+        }
+    }
+
+    private void fail(Pending p, Exception e) {
+        if (pending.remove(p.id, p)) {
+            p.timeout.cancel();
+            synchronized (this) {
+                deep.remove(p);
+            }
+            log.debug("Transaction {} failed: {}", p.id, e.getMessage());
+            p.future.completeExceptionally(e);
+        }
+    }
+
+    private static class Pending {
+        final TID id;
+        final int depth;
+        final CompletableFuture<HLAPITransaction> future = new CompletableFuture<>();
+        TimingWheel.Timeout timeout;
+        HLAPITransaction transaction; // guarded by the tracker
+        long confirmedAt; // guarded by the tracker
+
+        Pending(TID id, int depth) {
+            this.id = id;
+            this.depth = depth;
+        }
+    }
+
+    private static class Admission {
+        final Transaction transaction;
+        final int depth;
+        final long timeout;
+        final TimeUnit unit;
+        final CompletableFuture<HLAPITransaction> future = new CompletableFuture<>();
+        TimingWheel.Timeout expiry;
+
+        Admission(Transaction transaction, int depth, long timeout, TimeUnit unit) {
+            this.transaction = transaction;
+            this.depth = depth;
+            this.timeout = timeout;
+            this.unit = unit;
+        }
+    }
+}
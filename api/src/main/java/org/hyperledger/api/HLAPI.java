@@ -20,6 +20,8 @@ import org.hyperledger.block.Block;
 import org.hyperledger.transaction.TID;
 import org.hyperledger.transaction.Transaction;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -106,6 +108,27 @@ public interface HLAPI {
      */
     void sendTransaction(Transaction transaction) throws HLAPIException;
 
+    /**
+     * Send many signed transactions to the network.
+     * Implementations might pipeline the submissions, the default sends them one after the other.
+     *
+     * @param transactions - signed transactions
+     * @return result for each transaction in the order of the parameter list
+     * @throws HLAPIException
+     */
+    default List<SubmitResult> sendTransactions(List<Transaction> transactions) throws HLAPIException {
+        List<SubmitResult> results = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            try {
+                sendTransaction(transaction);
+                results.add(SubmitResult.accepted(transaction.getID()));
+            } catch (HLAPIException e) {
+                results.add(SubmitResult.failed(transaction.getID(), SubmitResult.UNDEFINED, String.valueOf(e.getMessage())));
+            }
+        }
+        return results;
+    }
+
     /**
      * Register a reject message listener.
      * A connected node might reject a transaction or block message of this server.
@@ -147,6 +170,54 @@ public interface HLAPI {
      */
     public void removeTransactionListener(TransactionListener listener);
 
+    /**
+     * Register a listener for the transactions of each block.
+     * All valid transactions observed on the network will be forwarded to this listener, one call per block.
+     * The default registers a transaction listener forwarding each transaction in a call of its own,
+     * at height 0.
+     *
+     * @param listener will be called for every block with validated transactions
+     * @throws HLAPIException
+     */
+    default void registerBatchTransactionListener(BatchTransactionListener listener) throws HLAPIException {
+        registerTransactionListener(new BatchAdapter(listener));
+    }
+
+    /**
+     * Remove a listener for the transactions of each block
+     *
+     * @param listener - a previously registered batch transaction listener
+     */
+    default void removeBatchTransactionListener(BatchTransactionListener listener) {
+        removeTransactionListener(new BatchAdapter(listener));
+    }
+
+    /**
+     * Watch transactions.
+     * Each of the transactions will be forwarded to the listener once, when it is observed in a validated block.
+     * Unlike a registered transaction listener the listener is not called for any other transaction.
+     * Implementations might index watches, the default registers a transaction listener filtering for the IDs,
+     * removed once all were forwarded.
+     *
+     * @param ids      - IDs of the transactions to watch
+     * @param listener will be called for every watched transaction
+     * @throws HLAPIException
+     */
+    default void watchTransactions(Collection<TID> ids, TransactionListener listener) throws HLAPIException {
+        registerTransactionListener(new TransactionWatch(ids, listener, this::removeTransactionListener));
+    }
+
+    /**
+     * Stop watching transactions not yet forwarded to the listener.
+     * The default stops only a watch of the same IDs as watched together.
+     *
+     * @param ids      - IDs of previously watched transactions
+     * @param listener - the listener watching them
+     */
+    default void unwatchTransactions(Collection<TID> ids, TransactionListener listener) {
+        removeTransactionListener(new TransactionWatch(ids, listener, this::removeTransactionListener));
+    }
+
     /**
      * Register a block listener.
      * All validated new blocks on the network, that extend the longest chain, will be forwarded to this listener.
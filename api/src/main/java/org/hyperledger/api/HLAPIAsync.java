@@ -0,0 +1,126 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.api;
+
+import org.hyperledger.block.BID;
+import org.hyperledger.block.Block;
+import org.hyperledger.transaction.TID;
+import org.hyperledger.transaction.Transaction;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of the low level API to the HyperLedger block chain server.
+ * Every call returns immediately, the result or the failure is delivered through the returned future.
+ * A failure of this API, e.g. a malformed answer, is reported as HLAPIException. A failure of the call to the server
+ * is reported with the unchecked exception of the transport, as the blocking API throws it, e.g.
+ * io.grpc.StatusRuntimeException, and an operation not supported by the implementation with
+ * UnsupportedOperationException.
+ *
+ * @see HLAPI
+ */
+public interface HLAPIAsync {
+    /**
+     * retrieves client version
+     *
+     * @return future of the client version e.g. 4.0.0
+     */
+    CompletableFuture<String> getClientVersion();
+
+    /**
+     * retrieves server version
+     *
+     * @return future of the server version e.g. 4.0.0
+     */
+    CompletableFuture<String> getServerVersion();
+
+    /**
+     * Returns nounce while doing a full roundtrip to the server.
+     *
+     * @param nonce - random nonce
+     * @return future of the same nonce
+     */
+    CompletableFuture<Long> ping(long nonce);
+
+    /**
+     * Get chain height of the trunk list
+     *
+     * @return future of the chain height
+     */
+    CompletableFuture<Integer> getChainHeight();
+
+    /**
+     * Get block header for the hash
+     *
+     * @param hash - block hash
+     * @return future of the block header, completed with null if hash is unknown
+     */
+    CompletableFuture<HLAPIHeader> getBlockHeader(BID hash);
+
+    /**
+     * Get block for the hash
+     *
+     * @param hash - block hash
+     * @return future of the block, completed with null if hash is unknown
+     */
+    CompletableFuture<HLAPIBlock> getBlock(BID hash);
+
+    /**
+     * Get the transaction identified by the hash, if it is on the current trunk (longest chain)
+     *
+     * @param hash - transaction hash (id)
+     * @return future of the transaction, completed with null if no transaction with that hash on the trunk
+     */
+    CompletableFuture<HLAPITransaction> getTransaction(TID hash);
+
+    /**
+     * Send a signed transaction to the network.
+     *
+     * @param transaction - a signed transaction
+     * @return future completed once the server accepted the transaction for processing
+     */
+    CompletableFuture<Void> sendTransaction(Transaction transaction);
+
+    /**
+     * Send many signed transactions to the network.
+     * A failed submission does not fail the returned future, but is reported in the result of that transaction.
+     *
+     * @param transactions - signed transactions
+     * @return future of the results for each transaction in the order of the parameter list
+     */
+    CompletableFuture<List<SubmitResult>> sendTransactions(List<Transaction> transactions);
+
+    /**
+     * Send a block newly created by this node.
+     *
+     * @param block - a new valid block
+     * @return future completed once the server received the block
+     */
+    CompletableFuture<Void> sendBlock(Block block);
+
+    /**
+     * Generate a trunk update to catch up from current inventory.
+     *
+     * @param inventory of block hashes known, highest first
+     * @param limit     maximum number of blocks or header expected, if inventory is empty
+     * @param headers   indicate if headers or full blocks are expected
+     * @param listener  a listener for trunk extensions
+     * @return future completed after the last trunk extension was delivered to the listener
+     * @see HLAPI#catchUp(List, int, boolean, TrunkListener)
+     */
+    CompletableFuture<Void> catchUp(List<BID> inventory, int limit, boolean headers, TrunkListener listener);
+}
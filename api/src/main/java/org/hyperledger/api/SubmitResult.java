@@ -0,0 +1,81 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.api;
+
+import org.hyperledger.transaction.TID;
+
+/**
+ * Outcome of submitting a single transaction of a bulk submission.
+ * Accepted means the server took the transaction for processing, it does not imply that it was already
+ * included into a block.
+ *
+ * @see HLAPI#sendTransactions(java.util.List)
+ */
+public class SubmitResult {
+    public static final int UNDEFINED = 0;
+    public static final int SUCCESS = 200;
+    public static final int FAILURE = 500;
+
+    private final TID ID;
+    private final boolean accepted;
+    private final int status;
+    private final String message;
+
+    public SubmitResult(TID ID, boolean accepted, int status, String message) {
+        this.ID = ID;
+        this.accepted = accepted;
+        this.status = status;
+        this.message = message;
+    }
+
+    public static SubmitResult accepted(TID ID) {
+        return new SubmitResult(ID, true, SUCCESS, "");
+    }
+
+    public static SubmitResult failed(TID ID, int status, String message) {
+        return new SubmitResult(ID, false, status, message);
+    }
+
+    /**
+     * @return ID of the submitted transaction
+     */
+    public TID getID() {
+        return ID;
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    /**
+     * @return status code the server responded with, UNDEFINED if the server could not be reached
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return message of the server or the reason of the failure
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "TID=" + ID + (accepted ? " accepted" : " failed status=" + status + " " + message);
+    }
+}
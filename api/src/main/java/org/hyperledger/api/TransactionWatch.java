@@ -0,0 +1,70 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.api;
+
+import org.hyperledger.transaction.TID;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A transaction listener forwarding watched transactions once, the default watch of {@link HLAPI}.
+ * Watches of the same IDs by the same listener are equal.
+ */
+final class TransactionWatch implements TransactionListener {
+    private final Set<TID> watched;
+    private final Set<TID> pending = ConcurrentHashMap.newKeySet();
+    private final TransactionListener listener;
+    private final Consumer<TransactionListener> remove;
+
+    /**
+     * @param remove - removes this watch once every watched transaction was forwarded
+     */
+    TransactionWatch(Collection<TID> ids, TransactionListener listener, Consumer<TransactionListener> remove) {
+        this.watched = new HashSet<>(ids);
+        this.pending.addAll(ids);
+        this.listener = listener;
+        this.remove = remove;
+    }
+
+    @Override
+    public void process(HLAPITransaction t) throws HLAPIException {
+        if (!pending.remove(t.getID())) {
+            return;
+        }
+        if (pending.isEmpty()) {
+            remove.accept(this);
+        }
+        listener.process(t);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TransactionWatch that = (TransactionWatch) o;
+        return watched.equals(that.watched) && listener.equals(that.listener);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(watched, listener);
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.api.TrunkListener;
+import org.hyperledger.block.BID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import protos.Api;
+import protos.Fabric;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static org.hyperledger.api.connector.CompletableFutures.fromListenable;
+
+/**
+ * Catches a listener up with the trunk by downloading blocks by number.
+ * A bounded number of blocks is fetched in parallel across the peer pool, results are reordered
+ * and delivered to the listener in height order, one update at a time.
+ */
+class BlockDownloader {
+    private static final Logger log = LoggerFactory.getLogger(BlockDownloader.class);
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int MAX_BATCH = 64;
+
+    private final PeerPool peers;
+    private final int parallelism;
+    private final BlockIndex index;
+
+    /**
+     * @param peers       - peers to download from
+     * @param parallelism - maximum number of GetBlockByNumber calls in flight
+     * @param index       - index updated with every block downloaded, or null
+     */
+    BlockDownloader(PeerPool peers, int parallelism, BlockIndex index) {
+        this.peers = peers;
+        this.parallelism = parallelism;
+        this.index = index;
+    }
+
+    /**
+     * Deliver the trunk following the highest block of the inventory that is still on the trunk.
+     * If no block of the inventory is on the trunk the trunk is delivered from genesis.
+     *
+     * @param inventory - block IDs known, highest first
+     * @param limit     - maximum number of blocks delivered, unlimited if not positive
+     * @param headers   - deliver blocks without their transactions
+     * @param listener  - receives the blocks in height order
+     * @return future completed after the last block was delivered
+     */
+    CompletableFuture<Void> catchUp(List<BID> inventory, int limit, boolean headers, TrunkListener listener) {
+        return tip().thenCompose(tip -> {
+            CompletableFuture<Position> fork = inventory.isEmpty()
+                    ? CompletableFuture.completedFuture(Position.GENESIS)
+                    : locate(inventory, tip);
+            return fork.thenCompose(position -> {
+                long from = position.height + 1;
+                long to = limit > 0 ? Math.min(tip, from + limit - 1) : tip;
+                log.debug("Catching up from {} to {}", from, to);
+                return new Download(from, to, new Delivery(position.id, headers, listener)).start();
+            });
+        });
+    }
+
+    /**
+     * Index the part of the trunk not yet scanned, up to the current tip
+     *
+     * @return future completed once the index covers the trunk from genesis to the tip
+     */
+    CompletableFuture<Void> indexTrunk() {
+        return tip().thenCompose(tip -> {
+            long from = index.getIndexedFromGenesis();
+            log.debug("Indexing blocks from {} to {}", from, tip);
+            return new Download(from, tip, (first, batch) -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    index.put(FabricConverter.blockID(batch.get(i)), (int) (first + i));
+                }
+                index.scanned((int) first, (int) first + batch.size());
+            }).start();
+        });
+    }
+
+    private CompletableFuture<Long> tip() {
+        return peers.call(peer -> fromListenable(peer.openchain().getBlockchainInfo(com.google.protobuf.Empty.getDefaultInstance())))
+                .thenApply(info -> info.getHeight() - 1);
+    }
+
+    /**
+     * Find the highest block of the inventory on the trunk, through the index if it knows a block of the inventory,
+     * otherwise by probing the trunk
+     */
+    private CompletableFuture<Position> locate(List<BID> inventory, long tip) {
+        return lookup(inventory, tip).thenCompose(position -> position != null
+                ? CompletableFuture.completedFuture(position)
+                : probe(new HashSet<>(inventory), tip, tip + 1, 1));
+    }
+
+    /**
+     * Resolve the inventory by the index, the highest indexed block first. Every hit costs a single fetch to check
+     * the ID, as fingerprints may collide.
+     *
+     * @return future of the position, or of null if no block of the inventory is indexed
+     */
+    private CompletableFuture<Position> lookup(List<BID> inventory, long tip) {
+        if (index == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Position best = null;
+        for (BID id : inventory) {
+            int height = index.get(id);
+            if (height >= 0 && height <= tip && (best == null || height > best.height)) {
+                best = new Position(height, id);
+            }
+        }
+        if (best == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Position candidate = best;
+        return fetch(candidate.height, MAX_ATTEMPTS).thenCompose(block -> {
+            if (FabricConverter.blockID(block).equals(candidate.id)) {
+                return CompletableFuture.completedFuture(candidate);
+            }
+            index.remove(candidate.id);
+            return lookup(inventory, tip);
+        });
+    }
+
+    /**
+     * Probe the trunk backwards at exponentially growing distances from the tip, up to parallelism probes at a time.
+     * Once a probe hits a known block, the gap above it up to the previous probe is scanned for a higher one.
+     * Probes may step over a short run of known blocks far below the tip, the trunk is then delivered from a lower
+     * known block or from genesis, which is redundant but not wrong.
+     *
+     * @param above    - lowest height probed so far, all probes at or above it missed
+     * @param distance - distance from the tip of the next probe
+     */
+    private CompletableFuture<Position> probe(Set<BID> known, long tip, long above, long distance) {
+        if (above <= 0) {
+            return CompletableFuture.completedFuture(Position.GENESIS);
+        }
+        List<Long> heights = new ArrayList<>();
+        List<CompletableFuture<Fabric.Block>> window = new ArrayList<>();
+        long next = distance;
+        long height = Math.max(0, tip - distance + 1);
+        while (window.size() < parallelism && height < above && (heights.isEmpty() || heights.get(heights.size() - 1) > 0)) {
+            heights.add(height);
+            window.add(fetch(height, MAX_ATTEMPTS));
+            next *= 2;
+            height = Math.max(0, tip - next + 1);
+        }
+        long nextDistance = next;
+        return CompletableFuture.allOf(window.toArray(new CompletableFuture<?>[0]))
+                .thenCompose(v -> {
+                    long previous = above;
+                    for (int i = 0; i < window.size(); i++) {
+                        long number = heights.get(i);
+                        BID id = FabricConverter.blockID(window.get(i).join());
+                        if (index != null) {
+                            index.put(id, (int) number);
+                        }
+                        if (known.contains(id)) {
+                            return scan(known, previous - 1, new Position(number, id));
+                        }
+                        previous = number;
+                    }
+                    return probe(known, tip, previous, nextDistance);
+                });
+    }
+
+    /**
+     * Scan the trunk backwards from below down to the floor, one window of parallel fetches at a time,
+     * for the highest block known
+     *
+     * @return future of the highest known block above the floor, or the floor
+     */
+    private CompletableFuture<Position> scan(Set<BID> known, long below, Position floor) {
+        if (below <= floor.height) {
+            return CompletableFuture.completedFuture(floor);
+        }
+        long low = Math.max(floor.height + 1, below - parallelism + 1);
+        List<CompletableFuture<Fabric.Block>> window = new ArrayList<>();
+        for (long number = low; number <= below; number++) {
+            window.add(fetch(number, MAX_ATTEMPTS));
+        }
+        return CompletableFuture.allOf(window.toArray(new CompletableFuture<?>[0]))
+                .thenCompose(v -> {
+                    for (long number = below; number >= low; number--) {
+                        BID id = FabricConverter.blockID(window.get((int) (number - low)).join());
+                        if (index != null) {
+                            index.put(id, (int) number);
+                        }
+                        if (known.contains(id)) {
+                            return CompletableFuture.completedFuture(new Position(number, id));
+                        }
+                    }
+                    return scan(known, low - 1, floor);
+                });
+    }
+
+    private CompletableFuture<Fabric.Block> fetch(long number, int attempts) {
+        Api.BlockNumber request = Api.BlockNumber.newBuilder().setNumber(number).build();
+        CompletableFuture<Fabric.Block> block = peers.call(peer -> fromListenable(peer.openchain().getBlockByNumber(request)));
+        if (attempts <= 1) {
+            return block;
+        }
+        return block.handle((b, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(b);
+            }
+            log.debug("Retrying block {}: {}", number, error.getMessage());
+            return fetch(number, attempts - 1);
+        }).thenCompose(Function.identity());
+    }
+
+    private static class Position {
+        static final Position GENESIS = new Position(-1, BID.INVALID);
+
+        final long height;
+        final BID id;
+
+        Position(long height, BID id) {
+            this.height = height;
+            this.id = id;
+        }
+    }
+
+    private interface Sink {
+        void accept(long first, List<Fabric.Block> batch);
+    }
+
+    /**
+     * Converts downloaded blocks and passes them on to the listener
+     */
+    private class Delivery implements Sink {
+        private final boolean headers;
+        private final TrunkListener listener;
+        private BID previous;
+
+        Delivery(BID previous, boolean headers, TrunkListener listener) {
+            this.previous = previous;
+            this.headers = headers;
+            this.listener = listener;
+        }
+
+        @Override
+        public void accept(long first, List<Fabric.Block> batch) {
+            List<HLAPIBlock> blocks = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                HLAPIBlock block = FabricConverter.toHLAPIBlock(batch.get(i), (int) (first + i), previous, !headers);
+                previous = block.getID();
+                blocks.add(block);
+            }
+            if (index != null) {
+                blocks.forEach(block -> index.put(block.getID(), block.getHeight()));
+                index.scanned((int) first, (int) first + batch.size());
+            }
+            listener.trunkUpdate(blocks);
+        }
+    }
+
+    /**
+     * Download of the blocks from..to. At most parallelism calls are in flight and at most
+     * 4 * parallelism blocks are fetched ahead of the next block to deliver.
+     * Blocks are passed to the sink in height order, by one thread at a time.
+     */
+    private class Download {
+        private final long to;
+        private final Sink sink;
+        private final int maxAhead = 4 * parallelism;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final Map<Long, Fabric.Block> ready = new HashMap<>(); // guarded by this
+        private long nextFetch; // guarded by this
+        private long nextDeliver; // guarded by this
+        private int inFlight; // guarded by this
+        private boolean delivering; // guarded by this
+
+        Download(long from, long to, Sink sink) {
+            this.to = to;
+            this.sink = sink;
+            this.nextFetch = from;
+            this.nextDeliver = from;
+        }
+
+        CompletableFuture<Void> start() {
+            if (nextDeliver > to) {
+                done.complete(null);
+            } else {
+                fetchMore();
+            }
+            return done;
+        }
+
+        private void fetchMore() {
+            while (true) {
+                long number;
+                synchronized (this) {
+                    if (done.isDone() || nextFetch > to || inFlight >= parallelism || nextFetch >= nextDeliver + maxAhead) {
+                        return;
+                    }
+                    number = nextFetch++;
+                    inFlight++;
+                }
+                fetch(number, MAX_ATTEMPTS).whenComplete((block, error) -> {
+                    synchronized (this) {
+                        inFlight--;
+                        if (error == null) {
+                            ready.put(number, block);
+                        }
+                    }
+                    if (error != null) {
+                        done.completeExceptionally(CompletableFutures.unwrap(error));
+                    } else {
+                        deliver();
+                        fetchMore();
+                    }
+                });
+            }
+        }
+
+        // only one thread delivers at a time, others leave their blocks in the ready buffer
+        private void deliver() {
+            while (true) {
+                List<Fabric.Block> batch = new ArrayList<>();
+                long first;
+                synchronized (this) {
+                    if (delivering || done.isDone()) {
+                        return;
+                    }
+                    first = nextDeliver;
+                    Fabric.Block block;
+                    while (batch.size() < MAX_BATCH && (block = ready.remove(nextDeliver)) != null) {
+                        batch.add(block);
+                        nextDeliver++;
+                    }
+                    if (batch.isEmpty()) {
+                        if (nextDeliver > to) {
+                            done.complete(null);
+                        }
+                        return;
+                    }
+                    delivering = true;
+                }
+                try {
+                    sink.accept(first, batch);
+                } catch (RuntimeException e) {
+                    done.completeExceptionally(e);
+                }
+                synchronized (this) {
+                    delivering = false;
+                }
+                fetchMore();
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.api.TrunkListener;
+import org.hyperledger.block.BID;
+
+import java.util.List;
+
+/**
+ * Index from block ID to height, as the fabric can only retrieve blocks by number.
+ * Keeps a 64 bit fingerprint of the ID and the height in open addressed primitive arrays at a load factor of at most
+ * 0.5, about 24 bytes per block.
+ * Fingerprints may collide, so a block retrieved by the indexed height has to be checked for its ID.
+ */
+class BlockIndex implements TrunkListener {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long EMPTY = 0L;
+
+    private long[] fingerprints = new long[INITIAL_CAPACITY]; // guarded by this
+    private int[] heights = new int[INITIAL_CAPACITY]; // guarded by this
+    private int size; // guarded by this
+    private int indexedFromGenesis; // guarded by this
+
+    /**
+     * Index blocks as followed on the trunk, only blocks of known height are followed
+     */
+    @Override
+    public void trunkUpdate(List<HLAPIBlock> added) {
+        for (HLAPIBlock block : added) {
+            put(block.getID(), block.getHeight());
+        }
+    }
+
+    synchronized void put(BID id, int height) {
+        if (2 * (size + 1) > fingerprints.length) {
+            resize(2 * fingerprints.length);
+        }
+        if (insert(fingerprints, heights, fingerprint(id), height)) {
+            size++;
+        }
+    }
+
+    /**
+     * @return the height of the block, or -1 if it is not indexed
+     */
+    synchronized int get(BID id) {
+        long fingerprint = fingerprint(id);
+        int mask = fingerprints.length - 1;
+        for (int i = slot(fingerprint, mask); fingerprints[i] != EMPTY; i = (i + 1) & mask) {
+            if (fingerprints[i] == fingerprint) {
+                return heights[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Remove a block found to be at a different height, e.g. after a fingerprint collision
+     */
+    synchronized void remove(BID id) {
+        long fingerprint = fingerprint(id);
+        int mask = fingerprints.length - 1;
+        int i = slot(fingerprint, mask);
+        while (fingerprints[i] != EMPTY && fingerprints[i] != fingerprint) {
+            i = (i + 1) & mask;
+        }
+        if (fingerprints[i] == EMPTY) {
+            return;
+        }
+        fingerprints[i] = EMPTY;
+        size--;
+        // re-insert the rest of the cluster so that lookups do not stop at the hole
+        for (int j = (i + 1) & mask; fingerprints[j] != EMPTY; j = (j + 1) & mask) {
+            long f = fingerprints[j];
+            int height = heights[j];
+            fingerprints[j] = EMPTY;
+            insert(fingerprints, heights, f, height);
+        }
+    }
+
+    /**
+     * @return number of blocks from genesis up that were indexed by scanning the trunk
+     */
+    synchronized int getIndexedFromGenesis() {
+        return indexedFromGenesis;
+    }
+
+    /**
+     * Record that the blocks from..to-1 of the trunk were indexed
+     */
+    synchronized void scanned(int from, int to) {
+        if (from <= indexedFromGenesis) {
+            indexedFromGenesis = Math.max(indexedFromGenesis, to);
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        long[] newFingerprints = new long[capacity];
+        int[] newHeights = new int[capacity];
+        for (int i = 0; i < fingerprints.length; i++) {
+            if (fingerprints[i] != EMPTY) {
+                insert(newFingerprints, newHeights, fingerprints[i], heights[i]);
+            }
+        }
+        fingerprints = newFingerprints;
+        heights = newHeights;
+    }
+
+    // returns true if the fingerprint was not yet present
+    private static boolean insert(long[] fingerprints, int[] heights, long fingerprint, int height) {
+        int mask = fingerprints.length - 1;
+        int i = slot(fingerprint, mask);
+        while (fingerprints[i] != EMPTY) {
+            if (fingerprints[i] == fingerprint) {
+                heights[i] = height;
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        fingerprints[i] = fingerprint;
+        heights[i] = height;
+        return true;
+    }
+
+    private static int slot(long fingerprint, int mask) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    private static long fingerprint(BID id) {
+        byte[] bytes = id.unsafeGetArray();
+        long fingerprint = 0;
+        for (int i = 0; i < 8; i++) {
+            fingerprint = (fingerprint << 8) | (bytes[i] & 0xff);
+        }
+        return fingerprint == EMPTY ? 1L : fingerprint;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BlockIndex{size=" + size + ", capacity=" + fingerprints.length +
+                ", indexedFromGenesis=" + indexedFromGenesis + "}";
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.block.BID;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import protos.EventsGrpc;
+import protos.EventsOuterClass.Event;
+import protos.EventsOuterClass.EventType;
+import protos.EventsOuterClass.Interest;
+import protos.EventsOuterClass.Register;
+import protos.Fabric;
+
+import java.util.function.Supplier;
+
+/**
+ * Publishes the blocks observed on a peer with backpressure. Every subscriber has its own event stream,
+ * blocks are requested from the peer only as the subscriber requests them, so a slow subscriber
+ * throttles the peer through gRPC flow control instead of queueing blocks on the heap.
+ */
+public class BlockPublisher implements Publisher<HLAPIBlock> {
+    private static final Logger log = LoggerFactory.getLogger(BlockPublisher.class);
+
+    // maximum number of blocks requested from the peer ahead of delivery
+    private static final int MAX_OUTSTANDING = 16;
+
+    private final Channel eventsChannel;
+    private final Supplier<GRPCObserver.ChainTip> start;
+
+    /**
+     * @param eventsChannel - channel to the events service of a peer
+     * @param start         - tip of the trunk when a subscriber subscribes, blocks are reported at height 0 if unknown
+     */
+    BlockPublisher(Channel eventsChannel, Supplier<GRPCObserver.ChainTip> start) {
+        this.eventsChannel = eventsChannel;
+        this.start = start;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super HLAPIBlock> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        BlockSubscription subscription = new BlockSubscription(subscriber, start.get());
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    private final class BlockSubscription extends ClientCall.Listener<Event> implements Subscription {
+        private final Subscriber<? super HLAPIBlock> subscriber;
+        private final ClientCall<Event, Event> call;
+
+        // guarded by this
+        private boolean started;
+        private boolean cancelled;
+        private long demand;
+        private int outstanding;
+        // signalled once the call is closed, serial with onNext
+        private Throwable failure;
+
+        // only accessed by the call's callbacks, which are serialized
+        private int height;
+        private BID previousID;
+
+        BlockSubscription(Subscriber<? super HLAPIBlock> subscriber, GRPCObserver.ChainTip tip) {
+            this.subscriber = subscriber;
+            this.call = eventsChannel.newCall(EventsGrpc.METHOD_CHAT, CallOptions.DEFAULT);
+            this.height = tip.height;
+            this.previousID = tip.id;
+        }
+
+        // a failure while the subscriber was in onSubscribe is signalled once it returned
+        void start() {
+            Throwable failed;
+            synchronized (this) {
+                if (!cancelled) {
+                    call.start(this, new Metadata());
+                    call.sendMessage(Event.newBuilder()
+                            .setRegister(Register.newBuilder()
+                                    .addEvents(Interest.newBuilder().setEventType(EventType.BLOCK)))
+                            .build());
+                    started = true;
+                    pump();
+                    return;
+                }
+                failed = failure;
+            }
+            if (failed != null) {
+                subscriber.onError(failed);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Requested " + n + " blocks, must be positive"));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                pump();
+            }
+        }
+
+        @Override
+        public synchronized void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                if (started) {
+                    call.cancel();
+                }
+            }
+        }
+
+        // cancels the call, the failure is signalled by onClose rather than on the caller's thread
+        private synchronized void fail(Throwable t) {
+            if (!cancelled) {
+                failure = t;
+                cancel();
+            }
+        }
+
+        // guarded by this
+        private void pump() {
+            if (!started || cancelled) {
+                return;
+            }
+            int k = (int) Math.min(demand, MAX_OUTSTANDING - outstanding);
+            if (k > 0) {
+                demand -= k;
+                outstanding += k;
+                call.request(k);
+            }
+        }
+
+        @Override
+        public void onMessage(Event event) {
+            synchronized (this) {
+                outstanding--;
+                if (cancelled) {
+                    return;
+                }
+                if (event.getEventCase() != Event.EventCase.BLOCK) {
+                    // not a block, ask for another message in its place
+                    demand++;
+                    pump();
+                    return;
+                }
+            }
+            HLAPIBlock block;
+            try {
+                Fabric.Block fabricBlock = event.getBlock();
+                BID id = FabricConverter.blockID(fabricBlock);
+                block = FabricConverter.toHLAPIBlock(fabricBlock, id, Math.max(height, 0),
+                        previousID != null ? previousID : BID.INVALID, true);
+                if (height >= 0) {
+                    height++;
+                }
+                previousID = id;
+            } catch (RuntimeException e) {
+                log.error("Can not convert block event: {}", e.getMessage());
+                cancel();
+                subscriber.onError(e);
+                return;
+            }
+            subscriber.onNext(block);
+            synchronized (this) {
+                pump();
+            }
+        }
+
+        @Override
+        public void onClose(Status status, Metadata trailers) {
+            Throwable failed;
+            synchronized (this) {
+                failed = failure;
+                failure = null;
+                if (cancelled && failed == null) {
+                    return;
+                }
+                cancelled = true;
+            }
+            if (failed != null) {
+                subscriber.onError(failed);
+            } else if (status.isOk()) {
+                subscriber.onComplete();
+            } else {
+                subscriber.onError(status.asRuntimeException());
+            }
+        }
+    }
+}
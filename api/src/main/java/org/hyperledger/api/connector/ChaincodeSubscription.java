@@ -0,0 +1,76 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.ChaincodeEventListener;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Interest of a listener in the events of a chaincode.
+ * The peer filters events by the same chaincode ID and event name, matching is repeated here
+ * to route events to the listeners that asked for them.
+ */
+final class ChaincodeSubscription {
+    final ChaincodeEventListener listener;
+    final String chaincodeID;
+    final String eventName;
+    private final Pattern pattern;
+
+    /**
+     * @param eventName - name or regular expression matching the names of events, empty for all events
+     */
+    ChaincodeSubscription(ChaincodeEventListener listener, String chaincodeID, String eventName) {
+        this.listener = Objects.requireNonNull(listener);
+        this.chaincodeID = Objects.requireNonNull(chaincodeID);
+        this.eventName = eventName == null ? "" : eventName;
+        this.pattern = compile(this.eventName);
+    }
+
+    private static Pattern compile(String eventName) {
+        try {
+            return Pattern.compile(eventName);
+        } catch (PatternSyntaxException e) {
+            return Pattern.compile(Pattern.quote(eventName));
+        }
+    }
+
+    boolean matches(String chaincodeID, String eventName) {
+        return this.chaincodeID.equals(chaincodeID)
+                && (this.eventName.isEmpty() || this.eventName.equals(eventName) || pattern.matcher(eventName).matches());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChaincodeSubscription that = (ChaincodeSubscription) o;
+        return listener.equals(that.listener) && chaincodeID.equals(that.chaincodeID) && eventName.equals(that.eventName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(listener, chaincodeID, eventName);
+    }
+
+    @Override
+    public String toString() {
+        return listener + " on " + chaincodeID + "/" + eventName;
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.Channel;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import protos.Fabric;
+import protos.Fabric.Message;
+import protos.PeerGrpc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Submits transactions over a single long-lived Peer.Chat stream instead of a unary ProcessTransaction
+ * call per transaction. Each transaction is framed as a CHAIN_TRANSACTION message. The peer processes messages
+ * The peer acknowledges a transaction with a RESPONSE message carrying its txid, which matches it to the pending
+ * submission. A response not matching any, e.g. a failure reported without txid, leaves the outcome of the pending
+ * submissions unknown, it fails the stream and all of them.
+ * <p>
+ * The stream is opened on first use and re-opened on the next submission after it failed.
+ */
+class ChatSubmitter {
+    private static final Logger log = LoggerFactory.getLogger(ChatSubmitter.class);
+
+    private final PeerGrpc.PeerStub stub;
+    private final String clientID = "hlapi-" + UUID.randomUUID();
+
+    // guarded by this
+    private ChatStream current;
+
+    ChatSubmitter(Channel channel) {
+        stub = PeerGrpc.newStub(channel);
+    }
+
+    synchronized CompletableFuture<Fabric.Response> submit(InvokeTransaction invocation) {
+        if (current == null) {
+            current = new ChatStream();
+        }
+        return current.send(invocation);
+    }
+
+    private synchronized void closed(ChatStream stream) {
+        if (current == stream) {
+            current = null;
+        }
+    }
+
+    private class ChatStream implements StreamObserver<Message> {
+        // by txid, guarded by ChatSubmitter.this
+        private final Map<String, CompletableFuture<Fabric.Response>> pending = new LinkedHashMap<>();
+        private final StreamObserver<Message> sender;
+
+        ChatStream() {
+            log.debug("Opening Peer.Chat stream for transaction submission as {}", clientID);
+            sender = stub.chat(this);
+            Fabric.PeerEndpoint endpoint = Fabric.PeerEndpoint.newBuilder()
+                    .setID(Fabric.PeerID.newBuilder().setName(clientID))
+                    .setType(Fabric.PeerEndpoint.Type.NON_VALIDATOR)
+                    .build();
+            sender.onNext(Message.newBuilder()
+                    .setType(Message.Type.DISC_HELLO)
+                    .setPayload(Fabric.HelloMessage.newBuilder().setPeerEndpoint(endpoint).build().toByteString())
+                    .build());
+        }
+
+        // a transaction still pending is not sent again, as its second response could not be matched
+        CompletableFuture<Fabric.Response> send(InvokeTransaction invocation) {
+            CompletableFuture<Fabric.Response> future = pending.get(invocation.getTxid());
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            pending.put(invocation.getTxid(), future);
+            sender.onNext(Message.newBuilder()
+                    .setType(Message.Type.CHAIN_TRANSACTION)
+                    .setPayload(invocation.toByteString())
+                    .build());
+            return future;
+        }
+
+        @Override
+        public void onNext(Message message) {
+            if (message.getType() != Message.Type.RESPONSE) {
+                log.debug("Ignoring chat message of type {}", message.getType());
+                return;
+            }
+            Fabric.Response response;
+            try {
+                response = Fabric.Response.parseFrom(message.getPayload());
+            } catch (InvalidProtocolBufferException e) {
+                unmatched("Undecodable response on chat stream: " + e.getMessage());
+                return;
+            }
+            CompletableFuture<Fabric.Response> future;
+            synchronized (ChatSubmitter.this) {
+                future = pending.remove(response.getMsg().toStringUtf8());
+            }
+            if (future == null) {
+                unmatched("Response on chat stream matches no pending transaction: " + response.getStatus() + " "
+                        + response.getMsg().toStringUtf8());
+                return;
+            }
+            future.complete(response);
+        }
+
+        private void unmatched(String reason) {
+            log.error(reason);
+            IllegalStateException cause = new IllegalStateException(reason);
+            fail(cause);
+            sender.onError(Status.CANCELLED.withDescription(reason).withCause(cause).asRuntimeException());
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            log.error("Error in chat stream: {}", t.getMessage());
+            fail(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            log.info("Chat stream completed");
+            fail(new IllegalStateException("Chat stream completed"));
+        }
+
+        private void fail(Throwable cause) {
+            closed(this);
+            List<CompletableFuture<Fabric.Response>> failed;
+            synchronized (ChatSubmitter.this) {
+                failed = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            for (CompletableFuture<Fabric.Response> future : failed) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+/**
+ * A cuckoo filter of 32 bit fingerprints in buckets of four, about 4.2 bytes per entry at its maximum load.
+ * False positives occur at a rate of about 8 / 2^32, there are no false negatives.
+ * An insert that can not find a place after a bounded number of relocations fails, the filter is then full.
+ */
+class CuckooFilter {
+    private static final int BUCKET_SIZE = 4;
+    private static final double MAX_LOAD = 0.95;
+    private static final int MAX_KICKS = 500;
+    private static final int EMPTY = 0;
+
+    private final int[] table;
+    private final int mask;
+    private int size;
+    private int stash = EMPTY;
+    private long random = 0x9e3779b97f4a7c15L;
+
+    /**
+     * @param capacity - number of entries the filter should hold
+     */
+    CuckooFilter(int capacity) {
+        int buckets = (int) Math.ceil(Math.max(1, capacity) / (BUCKET_SIZE * MAX_LOAD));
+        buckets = Integer.highestOneBit(Math.max(2, Math.min(buckets, 1 << 28)) - 1) << 1;
+        table = new int[buckets * BUCKET_SIZE];
+        mask = buckets - 1;
+    }
+
+    private static int fingerprint(long hash) {
+        int fingerprint = (int) (hash >>> 32);
+        return fingerprint == EMPTY ? 1 : fingerprint;
+    }
+
+    private int index(long hash) {
+        return (int) hash & mask;
+    }
+
+    int alternate(int index, int fingerprint) {
+        return (index ^ (fingerprint * 0x5bd1e995)) & mask;
+    }
+
+    /**
+     * @param hash - a uniformly distributed 64 bit hash of the entry
+     */
+    boolean mightContain(long hash) {
+        int fingerprint = fingerprint(hash);
+        int i1 = index(hash);
+        return stash == fingerprint || contains(i1, fingerprint) || contains(alternate(i1, fingerprint), fingerprint);
+    }
+
+    private boolean contains(int bucket, int fingerprint) {
+        for (int i = bucket * BUCKET_SIZE, end = i + BUCKET_SIZE; i < end; i++) {
+            if (table[i] == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean insert(int bucket, int fingerprint) {
+        for (int i = bucket * BUCKET_SIZE, end = i + BUCKET_SIZE; i < end; i++) {
+            if (table[i] == EMPTY) {
+                table[i] = fingerprint;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false if the filter is full, the entry is not added
+     */
+    boolean add(long hash) {
+        if (stash != EMPTY) {
+            return false;
+        }
+        int fingerprint = fingerprint(hash);
+        int bucket = index(hash);
+        if (insert(bucket, fingerprint) || insert(bucket = alternate(bucket, fingerprint), fingerprint)) {
+            size++;
+            return true;
+        }
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            random ^= random << 13;
+            random ^= random >>> 7;
+            random ^= random << 17;
+            int slot = bucket * BUCKET_SIZE + (int) (random & (BUCKET_SIZE - 1));
+            int victim = table[slot];
+            table[slot] = fingerprint;
+            fingerprint = victim;
+            bucket = alternate(bucket, fingerprint);
+            if (insert(bucket, fingerprint)) {
+                size++;
+                return true;
+            }
+        }
+        // the last victim is kept, so that no entry added before is lost
+        stash = fingerprint;
+        size++;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return bytes of the table
+     */
+    long memory() {
+        return 4L * table.length;
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.api.TrunkListener;
+import org.hyperledger.block.BID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import protos.Fabric;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * A local journal of the blocks observed, so that a consumer restarted can catch up from its checkpoint
+ * at disk speed and read only the tail from the network.
+ * <p>
+ * Blocks are appended as received, in their protobuf encoding, to segment files mapped into memory.
+ * A segment is named after the height of its first block. Each record is its length, the block height,
+ * a CRC32 of the block and the block. The length is written last, a torn record at the end of the
+ * journal is discarded on open. Every 64th record of a segment is kept in a sparse height index.
+ * <p>
+ * Only blocks observed with a known height are journaled, blocks missed while no stream was open leave a gap.
+ * Consumers commit the height of the last block they processed under their name.
+ */
+public class EventJournal implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(EventJournal.class);
+
+    private static final int HEADER = 12;
+    private static final int INDEX_INTERVAL = 64;
+    private static final int MAX_BATCH = 64;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINTS = "checkpoints.properties";
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final Path directory;
+    private final int segmentSize;
+
+    // guarded by this
+    private final List<Segment> segments = new ArrayList<>();
+    private final Properties checkpoints = new Properties();
+    private int lastHeight = -1;
+    private boolean closed;
+
+    private static final class Segment {
+        final Path file;
+        final int baseHeight;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int end;
+        int lastHeight = -1;
+        int records;
+        int[] indexHeights = new int[16];
+        int[] indexPositions = new int[16];
+        int indexed;
+
+        Segment(Path file, int baseHeight, int size) throws IOException {
+            this.file = file;
+            this.baseHeight = baseHeight;
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        }
+
+        void added(int height, int position) {
+            if (records++ % INDEX_INTERVAL == 0) {
+                if (indexed == indexHeights.length) {
+                    indexHeights = Arrays.copyOf(indexHeights, indexed * 2);
+                    indexPositions = Arrays.copyOf(indexPositions, indexed * 2);
+                }
+                indexHeights[indexed] = height;
+                indexPositions[indexed] = position;
+                indexed++;
+            }
+            lastHeight = height;
+        }
+
+        // position of the indexed record closest below or at height
+        int seek(int height) {
+            int i = Arrays.binarySearch(indexHeights, 0, indexed, height);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            return i < 0 ? 0 : indexPositions[i];
+        }
+
+        // scan existing records, discarding a torn or corrupt tail
+        void recover() {
+            int position = 0;
+            CRC32 crc = new CRC32();
+            while (position + HEADER <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + HEADER + length > buffer.capacity()) {
+                    break;
+                }
+                int height = buffer.getInt(position + 4);
+                byte[] block = new byte[length];
+                get(buffer, position + HEADER, block);
+                crc.reset();
+                crc.update(block);
+                if ((int) crc.getValue() != buffer.getInt(position + 8) || height <= lastHeight) {
+                    log.warn("Discarding journal records of {} from position {}", file, position);
+                    buffer.putInt(position, 0);
+                    break;
+                }
+                added(height, position);
+                position += HEADER + length;
+            }
+            end = position;
+        }
+
+        void close() throws IOException {
+            buffer.force();
+            channel.close();
+        }
+    }
+
+    // absolute bulk get, not available on Java 8 buffers
+    private static void get(ByteBuffer buffer, int position, byte[] target) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(target);
+    }
+
+    /**
+     * Open or create a journal with segments of the default size
+     *
+     * @param directory - directory of the journal, created if missing
+     */
+    public EventJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param directory   - directory of the journal, created if missing
+     * @param segmentSize - size of a segment file in bytes, larger for a block that does not fit
+     */
+    public EventJournal(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER) {
+            throw new IllegalArgumentException("Segment size too small " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparingInt(EventJournal::baseHeight));
+        for (Path file : files) {
+            Segment segment = new Segment(file, baseHeight(file), 0);
+            segment.recover();
+            segments.add(segment);
+            lastHeight = Math.max(lastHeight, segment.lastHeight);
+        }
+        Path checkpointFile = directory.resolve(CHECKPOINTS);
+        if (Files.exists(checkpointFile)) {
+            try (InputStream in = Files.newInputStream(checkpointFile)) {
+                checkpoints.load(in);
+            }
+        }
+        log.info("Opened journal {} with {} segments up to height {}", directory, segments.size(), lastHeight);
+    }
+
+    private static int baseHeight(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Append a block. Blocks not higher than the last block journaled are ignored.
+     *
+     * @param height - height of the block
+     * @param block  - protobuf encoding of the block
+     * @return true if appended
+     */
+    public synchronized boolean append(int height, byte[] block) throws IOException {
+        if (closed) {
+            throw new IOException("Journal closed");
+        }
+        if (height <= lastHeight) {
+            return false;
+        }
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.end + HEADER + block.length > segment.buffer.capacity()) {
+            Path file = directory.resolve(String.format("%010d%s", height, SEGMENT_SUFFIX));
+            segment = new Segment(file, height, Math.max(segmentSize, HEADER + block.length));
+            segments.add(segment);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(block);
+        int position = segment.end;
+        ByteBuffer view = segment.buffer.duplicate();
+        view.position(position + 4);
+        view.putInt(height);
+        view.putInt((int) crc.getValue());
+        view.put(block);
+        segment.buffer.putInt(position, block.length);
+        segment.end = position + HEADER + block.length;
+        segment.added(height, position);
+        lastHeight = height;
+        return true;
+    }
+
+    /**
+     * @return height of the last block journaled, -1 if empty
+     */
+    public synchronized int getLastHeight() {
+        return lastHeight;
+    }
+
+    /**
+     * Read consecutive blocks from a height on, up to the end of the journal or the first gap
+     *
+     * @param fromHeight - height of the first block to read
+     * @param visitor    - receives height and protobuf encoding of each block in height order
+     * @return height of the last block read, fromHeight - 1 if none
+     */
+    int read(int fromHeight, BiConsumer<Integer, byte[]> visitor) {
+        List<Segment> snapshot;
+        int[] ends;
+        synchronized (this) {
+            snapshot = new ArrayList<>(segments);
+            ends = new int[snapshot.size()];
+            for (int i = 0; i < ends.length; i++) {
+                ends[i] = snapshot.get(i).end;
+            }
+        }
+        int expected = fromHeight;
+        for (int i = 0; i < snapshot.size(); i++) {
+            Segment segment = snapshot.get(i);
+            if (segment.lastHeight < expected || i + 1 < snapshot.size() && snapshot.get(i + 1).baseHeight <= expected) {
+                continue;
+            }
+            int position = segment.seek(expected);
+            while (position < ends[i]) {
+                int length = segment.buffer.getInt(position);
+                int height = segment.buffer.getInt(position + 4);
+                if (height > expected) {
+                    return expected - 1;
+                }
+                if (height == expected) {
+                    byte[] block = new byte[length];
+                    get(segment.buffer, position + HEADER, block);
+                    visitor.accept(height, block);
+                    expected++;
+                }
+                position += HEADER + length;
+            }
+        }
+        return expected - 1;
+    }
+
+    /**
+     * Deliver journaled blocks from a height on to the listener, in batches, up to the end of the journal
+     * or the first gap. Continue from the last block delivered with catchUp.
+     *
+     * @param fromHeight - height of the first block to deliver
+     * @return the last block delivered, null if none
+     */
+    public HLAPIBlock replay(int fromHeight, TrunkListener listener) {
+        List<HLAPIBlock> batch = new ArrayList<>(MAX_BATCH);
+        HLAPIBlock[] last = new HLAPIBlock[1];
+        read(fromHeight, (height, bytes) -> {
+            Fabric.Block block;
+            try {
+                block = Fabric.Block.parseFrom(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            BID previousID = last[0] != null ? last[0].getID() : BID.INVALID;
+            last[0] = FabricConverter.toHLAPIBlock(block, height, previousID, true);
+            batch.add(last[0]);
+            if (batch.size() == MAX_BATCH) {
+                listener.trunkUpdate(new ArrayList<>(batch));
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            listener.trunkUpdate(batch);
+        }
+        return last[0];
+    }
+
+    /**
+     * Deliver journaled blocks following the checkpoint of the consumer
+     *
+     * @return the last block delivered, null if none
+     * @see #replay(int, TrunkListener)
+     */
+    public HLAPIBlock replay(String consumer, TrunkListener listener) {
+        return replay(getCheckpoint(consumer) + 1, listener);
+    }
+
+    /**
+     * @return height of the last block the consumer committed, -1 if none
+     */
+    public synchronized int getCheckpoint(String consumer) {
+        return Integer.parseInt(checkpoints.getProperty(consumer, "-1"));
+    }
+
+    /**
+     * Record the height of the last block the consumer processed. Checkpoints are written to disk on commit.
+     */
+    public synchronized void commit(String consumer, int height) throws IOException {
+        checkpoints.setProperty(consumer, Integer.toString(height));
+        Path temporary = directory.resolve(CHECKPOINTS + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            checkpoints.store(out, "last block height processed by consumer");
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINTS), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Delete segments holding only blocks below the height, e.g. below the lowest checkpoint.
+     * The segment appended to is kept.
+     *
+     * @return number of segments deleted
+     */
+    public synchronized int deleteBefore(int height) throws IOException {
+        int deleted = 0;
+        while (segments.size() > 1 && segments.get(0).lastHeight < height) {
+            Segment segment = segments.remove(0);
+            segment.close();
+            Files.delete(segment.file);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Write blocks appended to disk
+     */
+    public synchronized void flush() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            for (Segment segment : segments) {
+                segment.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import io.grpc.Channel;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A peer events are observed on, with statistics of the blocks received from it.
+ * If events are observed on several peers, every block is delivered once, as received first.
+ */
+public class EventSource {
+    private final String address;
+    private final Channel channel;
+
+    private final AtomicLong blocksReceived = new AtomicLong();
+    private final AtomicLong blocksFirst = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    public EventSource(String address, Channel channel) {
+        this.address = address;
+        this.channel = channel;
+    }
+
+    /**
+     * Connect in plain text
+     *
+     * @param address - address of the peer's event service in host:port form
+     */
+    public static EventSource forAddress(String address) {
+        return new EventSource(address, PeerPool.channel(address));
+    }
+
+    Channel getChannel() {
+        return channel;
+    }
+
+    void received(boolean first) {
+        blocksReceived.incrementAndGet();
+        if (first) {
+            blocksFirst.incrementAndGet();
+        }
+    }
+
+    void reconnected() {
+        reconnects.incrementAndGet();
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * @return number of blocks received from this peer
+     */
+    public long getBlocksReceived() {
+        return blocksReceived.get();
+    }
+
+    /**
+     * @return number of blocks this peer delivered before any other
+     */
+    public long getBlocksFirst() {
+        return blocksFirst.get();
+    }
+
+    /**
+     * @return number of times the stream to this peer was reconnected
+     */
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    @Override
+    public String toString() {
+        return address;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import com.google.protobuf.ByteString;
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.api.HLAPITransaction;
+import org.hyperledger.block.BID;
+import org.hyperledger.block.Header;
+import org.hyperledger.block.HyperledgerHeader;
+import org.hyperledger.common.Hash;
+import org.hyperledger.merkletree.MerkleRoot;
+import org.hyperledger.merkletree.MerkleTree;
+import org.hyperledger.transaction.Endorser;
+import org.hyperledger.transaction.TID;
+import org.hyperledger.transaction.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import protos.Chaincode.ChaincodeInvocationSpec;
+import protos.Fabric;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Conversion of fabric protocol messages to the API's model
+ */
+class FabricConverter {
+    private static final Logger log = LoggerFactory.getLogger(FabricConverter.class);
+
+    private FabricConverter() {
+    }
+
+    /**
+     * The ID of a fabric block is the digest of the block without its non hash data, so the same block has
+     * the same ID whether it was received as an event or retrieved by number.
+     */
+    static BID blockID(Fabric.Block block) {
+        return new BID(Hash.of(block.toBuilder().clearNonHashData().build().toByteArray()));
+    }
+
+    /**
+     * @param previousID       - ID of the block at height - 1, if known
+     * @param withTransactions - false to convert the header only, the merkle root still covers the transactions
+     */
+    static HLAPIBlock toHLAPIBlock(Fabric.Block block, int height, BID previousID, boolean withTransactions) {
+        return toHLAPIBlock(block, blockID(block), height, previousID, withTransactions);
+    }
+
+    static HLAPIBlock toHLAPIBlock(Fabric.Block block, BID id, int height, BID previousID, boolean withTransactions) {
+        List<Transaction> txList = block.getTransactionsList().stream()
+                .map(FabricConverter::toHLTransaction)
+                .collect(toList());
+
+        return toHLAPIBlock(block, id, height, previousID, withTransactions, txList, MerkleTree.computeMerkleRoot(txList));
+    }
+
+    /**
+     * Convert a block, decoding its transactions and computing the merkle root on the pool.
+     * Transactions are decoded completely, not lazily, and remain in block order.
+     *
+     * @param pool      - pool to decode on
+     * @param chunkSize - number of transaction IDs a merkle root task compresses
+     */
+    static HLAPIBlock toHLAPIBlock(Fabric.Block block, BID id, int height, BID previousID, ForkJoinPool pool, int chunkSize) {
+        List<Transaction> txList = pool.submit(() -> block.getTransactionsList().parallelStream()
+                .map(FabricConverter::toDecodedTransaction)
+                .collect(toList())).join();
+
+        return toHLAPIBlock(block, id, height, previousID, true, txList, MerkleTree.computeMerkleRoot(txList, pool, chunkSize));
+    }
+
+    private static HLAPIBlock toHLAPIBlock(Fabric.Block block, BID id, int height, BID previousID, boolean withTransactions,
+                                           List<Transaction> txList, MerkleRoot merkleRoot) {
+        Header header = new HyperledgerHeader(id, previousID, merkleRoot,
+                (int) block.getTimestamp().getSeconds());
+
+        List<HLAPITransaction> hlapiTxs = withTransactions
+                ? txList.stream().map(tx -> new HLAPITransaction(tx, header.getID())).collect(toList())
+                : new ArrayList<>();
+
+        return new HLAPIBlock.Builder()
+                .header(header)
+                .height(height)
+                .transactions(hlapiTxs)
+                .build();
+    }
+
+    private static Transaction toDecodedTransaction(Fabric.Transaction tx) {
+        Transaction transaction = toHLTransaction(tx);
+        transaction.getInputs();
+        return transaction;
+    }
+
+    static Transaction toHLTransaction(Fabric.Transaction tx) {
+        ByteString invocationSpecBytes = tx.getPayload();
+        try {
+            ChaincodeInvocationSpec invocationSpec = ChaincodeInvocationSpec.parseFrom(invocationSpecBytes);
+            ByteString transactionBytes = invocationSpec.getChaincodeSpec().getCtorMsg().getArgs(0);
+            if (transactionBytes.size() == 0) {
+                return new Transaction(new ArrayList<TID>(), new ArrayList<byte[]>(), new ArrayList<Endorser>());
+            }
+            return Transaction.lazyFromByteString(transactionBytes);
+        } catch (IOException e) {
+            log.error("Error when processing transaction {}, {}", invocationSpecBytes, e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,481 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import com.google.protobuf.ByteString;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCalls;
+import org.hyperledger.api.*;
+import org.hyperledger.block.BID;
+import org.hyperledger.block.Block;
+import org.hyperledger.transaction.TID;
+import org.hyperledger.transaction.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import protos.Chaincode;
+import protos.Api;
+import protos.Fabric;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.hyperledger.api.connector.CompletableFutures.failed;
+import static org.hyperledger.api.connector.CompletableFutures.fromListenable;
+
+/**
+ * Non-blocking client of the peers of a pool. A failed gRPC call completes the future with its
+ * StatusRuntimeException. Versions, ping and sendBlock are not supported.
+ */
+public class GRPCAsyncClient implements HLAPIAsync {
+    private static final Logger log = LoggerFactory.getLogger(GRPCAsyncClient.class);
+    private static String NOT_FOUND = "ledger: resource not found";
+    private static final int DEFAULT_SUBMIT_WINDOW = 128;
+    private static final int DEFAULT_DOWNLOAD_WINDOW = 16;
+
+    private final PeerPool peers;
+    private volatile int submitWindow = DEFAULT_SUBMIT_WINDOW;
+    private volatile int downloadWindow = DEFAULT_DOWNLOAD_WINDOW;
+    private volatile boolean streamingSubmission = false;
+    private volatile HedgingPolicy hedgingPolicy;
+    private volatile LedgerCache ledgerCache;
+    private final BlockIndex blockIndex = new BlockIndex();
+    private CompletableFuture<Void> indexing; // guarded by this
+
+    public GRPCAsyncClient(Channel channel) {
+        this(PeerPool.forChannel(channel));
+    }
+
+    /**
+     * Create a client spreading its calls across the peers of the pool
+     *
+     * @param peers - peers to connect to
+     */
+    public GRPCAsyncClient(PeerPool peers) {
+        this.peers = peers;
+    }
+
+    /**
+     * @return the peers this client connects to
+     */
+    public PeerPool getPeers() {
+        return peers;
+    }
+
+    /**
+     * Set the maximum number of transactions a bulk submission keeps in flight
+     *
+     * @param submitWindow - number of outstanding ProcessTransaction calls, at least 1
+     */
+    public void setSubmitWindow(int submitWindow) {
+        if (submitWindow < 1) {
+            throw new IllegalArgumentException("Submit window must be positive");
+        }
+        this.submitWindow = submitWindow;
+    }
+
+    /**
+     * Set the maximum number of blocks catchUp downloads in parallel
+     *
+     * @param downloadWindow - number of outstanding GetBlockByNumber calls, at least 1
+     */
+    public void setDownloadWindow(int downloadWindow) {
+        if (downloadWindow < 1) {
+            throw new IllegalArgumentException("Download window must be positive");
+        }
+        this.downloadWindow = downloadWindow;
+    }
+
+    /**
+     * Choose how transactions are submitted
+     *
+     * @param streamingSubmission - true to send transactions over a long-lived Peer.Chat stream,
+     *                            false for a unary ProcessTransaction call per transaction
+     */
+    public void setStreamingSubmission(boolean streamingSubmission) {
+        this.streamingSubmission = streamingSubmission;
+    }
+
+    /**
+     * Enable hedged reads. Read-only calls that take longer than the policy's delay are repeated on another peer.
+     *
+     * @param hedgingPolicy - the policy, or null to disable hedging
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * Consult the cache before reading transactions from the network, and add what was read to it.
+     *
+     * @param ledgerCache - the cache, or null to read from the network only
+     */
+    public void setLedgerCache(LedgerCache ledgerCache) {
+        this.ledgerCache = ledgerCache;
+    }
+
+    /**
+     * @return the index of block IDs to heights, to be fed with observed blocks
+     */
+    BlockIndex blockIndex() {
+        return blockIndex;
+    }
+
+    /**
+     * Run a read-only call, hedged if a policy is set and there is more than one peer
+     */
+    private <T> CompletableFuture<T> read(Function<PeerPool.Peer, CompletableFuture<T>> rpc) {
+        HedgingPolicy policy = hedgingPolicy;
+        if (policy == null || peers.getPeers().size() < 2) {
+            return peers.call(rpc);
+        }
+        return new HedgedRead<>(policy, rpc).result;
+    }
+
+    /**
+     * Completes with the first successful answer of the primary call or its hedge,
+     * fails only if every call sent failed. If the primary fails for its peer before the hedge is due the hedge is
+     * sent at once, a failure answered by the peer, e.g. for a transaction not found, is final.
+     */
+    private class HedgedRead<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final HedgingPolicy policy;
+        private final Function<PeerPool.Peer, CompletableFuture<T>> rpc;
+        private final PeerPool.Peer primary;
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private final AtomicBoolean hedged = new AtomicBoolean();
+        private final ScheduledFuture<?> timer;
+
+        HedgedRead(HedgingPolicy policy, Function<PeerPool.Peer, CompletableFuture<T>> rpc) {
+            this.policy = policy;
+            this.rpc = rpc;
+            this.primary = peers.select();
+            timer = HedgingPolicy.scheduler.schedule(this::hedge, policy.getDelay(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            result.whenComplete((r, e) -> timer.cancel(false));
+            send(primary, false);
+        }
+
+        private void hedge() {
+            if (result.isDone() || !hedged.compareAndSet(false, true)) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            policy.hedgeSent();
+            send(peers.select(primary), true);
+        }
+
+        private void send(PeerPool.Peer peer, boolean isHedge) {
+            long start = System.nanoTime();
+            peers.call(peer, rpc).whenComplete((answer, error) -> {
+                if (error == null) {
+                    policy.record(System.nanoTime() - start);
+                    if (result.complete(answer) && isHedge) {
+                        policy.hedgeWon();
+                    }
+                    return;
+                }
+                if (!isHedge) {
+                    timer.cancel(false);
+                    if (PeerPool.isPeerFailure(CompletableFutures.unwrap(error))) {
+                        // counted as outstanding before the primary is, so the read can not fail in between
+                        hedge();
+                    } else {
+                        hedged.set(true);
+                    }
+                }
+                if (outstanding.decrementAndGet() == 0) {
+                    result.completeExceptionally(CompletableFutures.unwrap(error));
+                }
+            });
+        }
+    }
+
+    private CompletableFuture<Fabric.Response> invoke(Transaction transaction) {
+        InvokeTransaction invocation = new InvokeTransaction(transaction);
+        log.debug("Sending transaction of size {}", invocation.getSerializedSize());
+        if (streamingSubmission) {
+            return peers.call(peer -> peer.chat().submit(invocation));
+        }
+        return peers.call(peer -> fromListenable(ClientCalls.futureUnaryCall(
+                peer.channel().newCall(InvokeTransaction.METHOD_PROCESS_TRANSACTION, CallOptions.DEFAULT), invocation)));
+    }
+
+    private CompletableFuture<ByteString> query(String functionName, Collection<String> args) {
+        List<ByteString> byteStringArgs = args.stream()
+                .map(ByteString::copyFromUtf8)
+                .collect(Collectors.toList());
+        Chaincode.ChaincodeID chainCodeId = Chaincode.ChaincodeID.newBuilder()
+                .setName(Transaction.chaincodeName)
+                .build();
+        Chaincode.ChaincodeInput chainCodeInput = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(ByteString.copyFromUtf8(functionName))
+                .addAllArgs(byteStringArgs)
+                .build();
+
+        Chaincode.ChaincodeSpec.Builder chaincodeSpec = Chaincode.ChaincodeSpec.newBuilder()
+                .setChaincodeID(chainCodeId)
+                .setCtorMsg(chainCodeInput);
+        Chaincode.ChaincodeInvocationSpec.Builder chaincodeInvocationSpec = Chaincode.ChaincodeInvocationSpec.newBuilder()
+                .setChaincodeSpec(chaincodeSpec);
+        Fabric.Transaction.Builder tb = Fabric.Transaction.newBuilder();
+        tb.setType(Fabric.Transaction.Type.CHAINCODE_QUERY);
+        tb.setPayload(chaincodeInvocationSpec.build().toByteString());
+        tb.setTxid("query-id");
+        Fabric.Transaction fabricTransaction = tb.build();
+        return read(peer -> fromListenable(peer.peer().processTransaction(fabricTransaction)))
+                .thenApply(Fabric.Response::getMsg);
+    }
+
+    @Override
+    public CompletableFuture<String> getClientVersion() {
+        return failed(new UnsupportedOperationException());
+    }
+
+    @Override
+    public CompletableFuture<String> getServerVersion() {
+        return failed(new UnsupportedOperationException());
+    }
+
+    @Override
+    public CompletableFuture<Long> ping(long nonce) {
+        return failed(new UnsupportedOperationException());
+    }
+
+    @Override
+    public CompletableFuture<Integer> getChainHeight() {
+        return read(peer -> fromListenable(peer.openchain().getBlockCount(com.google.protobuf.Empty.getDefaultInstance())))
+                .thenApply(height -> (int) height.getCount());
+    }
+
+    @Override
+    public CompletableFuture<HLAPIHeader> getBlockHeader(BID hash) {
+        return lookup(hash, false).thenApply(block -> block == null ? null : block.getHeader());
+    }
+
+    @Override
+    public CompletableFuture<HLAPIBlock> getBlock(BID hash) {
+        return lookup(hash, true);
+    }
+
+    /**
+     * Find a block in the cache, or retrieve it by the height the index knows for it.
+     * If the index does not know the block, the trunk not yet indexed is scanned once.
+     */
+    private CompletableFuture<HLAPIBlock> lookup(BID hash, boolean withTransactions) {
+        LedgerCache cache = ledgerCache;
+        if (cache != null) {
+            HLAPIBlock cached = cache.getBlock(hash);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        int height = blockIndex.get(hash);
+        if (height < 0) {
+            return scanFor(hash, withTransactions);
+        }
+        return fetchBlock(hash, height, withTransactions)
+                .thenCompose(block -> block != null ? CompletableFuture.completedFuture(block) : scanFor(hash, withTransactions));
+    }
+
+    private CompletableFuture<HLAPIBlock> scanFor(BID hash, boolean withTransactions) {
+        return indexTrunk().thenCompose(v -> {
+            int height = blockIndex.get(hash);
+            return height < 0 ? CompletableFuture.completedFuture(null) : fetchBlock(hash, height, withTransactions);
+        });
+    }
+
+    // completes with null if the block at that height is not the one expected
+    private CompletableFuture<HLAPIBlock> fetchBlock(BID hash, int height, boolean withTransactions) {
+        Api.BlockNumber number = Api.BlockNumber.newBuilder().setNumber(height).build();
+        return read(peer -> fromListenable(peer.openchain().getBlockByNumber(number)))
+                .thenApply(block -> {
+                    if (!hash.equals(FabricConverter.blockID(block))) {
+                        blockIndex.remove(hash);
+                        return null;
+                    }
+                    HLAPIBlock result = FabricConverter.toHLAPIBlock(block, height, BID.INVALID, withTransactions);
+                    LedgerCache cache = ledgerCache;
+                    if (withTransactions && cache != null) {
+                        cache.putBlock(result);
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * @return future of the ID of the block at that height
+     */
+    CompletableFuture<BID> blockID(int height) {
+        Api.BlockNumber number = Api.BlockNumber.newBuilder().setNumber(height).build();
+        return read(peer -> fromListenable(peer.openchain().getBlockByNumber(number)))
+                .thenApply(FabricConverter::blockID);
+    }
+
+    // concurrent lookups share one scan
+    private synchronized CompletableFuture<Void> indexTrunk() {
+        if (indexing == null || indexing.isDone()) {
+            indexing = new BlockDownloader(peers, downloadWindow, blockIndex).indexTrunk();
+        }
+        return indexing;
+    }
+
+    @Override
+    public CompletableFuture<HLAPITransaction> getTransaction(TID hash) {
+        LedgerCache cache = ledgerCache;
+        if (cache != null) {
+            HLAPITransaction cached = cache.getTransaction(hash);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        CompletableFuture<HLAPITransaction> transaction = query("getTran", Collections.singletonList(hash.toString()))
+                .handle((result, error) -> {
+                    if (error != null) {
+                        Throwable cause = CompletableFutures.unwrap(error);
+                        if (cause instanceof StatusRuntimeException && cause.getMessage().contains(NOT_FOUND)) {
+                            return null;
+                        }
+                        throw new CompletionException(cause);
+                    }
+                    return toHLAPITransaction(hash, result);
+                });
+        if (cache != null) {
+            transaction.thenAccept(t -> {
+                if (t != null) {
+                    cache.putTransaction(t);
+                }
+            });
+        }
+        return transaction;
+    }
+
+    private static HLAPITransaction toHLAPITransaction(TID hash, ByteString result) {
+        try {
+            if (result.isEmpty()) return null;
+            if (result.toString("UTF8").contains(NOT_FOUND)) return null;
+            Transaction t = Transaction.fromByteString(result);
+            if (!hash.equals(t.getID())) return null;
+            return new HLAPITransaction(t, BID.INVALID);
+        } catch (IOException e) {
+            throw new CompletionException(new HLAPIException(e));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> sendTransaction(Transaction transaction) {
+        return invoke(transaction).thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<List<SubmitResult>> sendTransactions(List<Transaction> transactions) {
+        PipelinedSubmission submission = new PipelinedSubmission(transactions);
+        submission.start(submitWindow);
+        return submission.done;
+    }
+
+    private static SubmitResult toSubmitResult(Transaction transaction, Fabric.Response response, Throwable error) {
+        if (error != null) {
+            Throwable cause = CompletableFutures.unwrap(error);
+            return SubmitResult.failed(transaction.getID(), SubmitResult.UNDEFINED, String.valueOf(cause.getMessage()));
+        }
+        if (response.getStatus() == Fabric.Response.StatusCode.SUCCESS) {
+            return SubmitResult.accepted(transaction.getID());
+        }
+        return SubmitResult.failed(transaction.getID(), response.getStatusValue(), response.getMsg().toStringUtf8());
+    }
+
+    /**
+     * Keeps at most window ProcessTransaction calls in flight, each completion starts the next submission.
+     */
+    private class PipelinedSubmission {
+        private final List<Transaction> transactions;
+        private final SubmitResult[] results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CompletableFuture<List<SubmitResult>> done = new CompletableFuture<>();
+
+        PipelinedSubmission(List<Transaction> transactions) {
+            this.transactions = transactions;
+            this.results = new SubmitResult[transactions.size()];
+            this.remaining = new AtomicInteger(transactions.size());
+        }
+
+        void start(int window) {
+            if (transactions.isEmpty()) {
+                done.complete(Collections.emptyList());
+                return;
+            }
+            log.debug("Sending {} transactions with window {}", transactions.size(), window);
+            for (int i = 0; i < Math.min(window, transactions.size()); i++) {
+                pump();
+            }
+        }
+
+        // submissions failing synchronously are handled in this loop rather than recursively
+        private void pump() {
+            int i;
+            while ((i = next.getAndIncrement()) < transactions.size()) {
+                Transaction transaction = transactions.get(i);
+                CompletableFuture<Fabric.Response> call;
+                try {
+                    call = invoke(transaction);
+                } catch (RuntimeException e) {
+                    call = failed(e);
+                }
+                int index = i;
+                if (call.isDone()) {
+                    call.whenComplete((response, error) -> complete(index, response, error));
+                } else {
+                    call.whenComplete((response, error) -> {
+                        complete(index, response, error);
+                        pump();
+                    });
+                    return;
+                }
+            }
+        }
+
+        private void complete(int i, Fabric.Response response, Throwable error) {
+            results[i] = toSubmitResult(transactions.get(i), response, error);
+            if (remaining.decrementAndGet() == 0) {
+                done.complete(Arrays.asList(results));
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> sendBlock(Block block) {
+        return failed(new UnsupportedOperationException());
+    }
+
+    @Override
+    public CompletableFuture<Void> catchUp(List<BID> inventory, int limit, boolean headers, TrunkListener listener) {
+        return new BlockDownloader(peers, downloadWindow, blockIndex).catchUp(inventory, limit, headers, listener);
+    }
+}
@@ -16,9 +16,8 @@
 
 package org.hyperledger.api.connector;
 
-import com.google.protobuf.ByteString;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.grpc.ManagedChannel;
-import io.grpc.StatusRuntimeException;
 import io.grpc.netty.NegotiationType;
 import io.grpc.netty.NettyChannelBuilder;
 import org.hyperledger.api.*;
@@ -28,86 +27,277 @@ import org.hyperledger.transaction.TID;
 import org.hyperledger.transaction.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import protos.Api.BlockCount;
-import protos.Chaincode;
-import protos.Chaincode.ChaincodeID;
-import protos.Chaincode.ChaincodeInput;
-import protos.Chaincode.ChaincodeInvocationSpec;
-import protos.Chaincode.ChaincodeSpec;
-import protos.Fabric;
-import protos.OpenchainGrpc;
-import protos.OpenchainGrpc.OpenchainBlockingStub;
-import protos.PeerGrpc;
-
-import java.io.IOException;
+
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hyperledger.api.connector.CompletableFutures.await;
 
+/**
+ * Blocking HLAPI connector, a thin adapter over GRPCAsyncClient
+ *
+ * @see GRPCAsyncClient
+ */
 public class GRPCClient implements HLAPI {
     private static final Logger log = LoggerFactory.getLogger(GRPCClient.class);
-    private static String NOT_FOUND = "ledger: resource not found";    private final GRPCObserver observer;
-
-    private OpenchainBlockingStub obs;
-    private PeerGrpc.PeerBlockingStub pbs;
+    private static final long DEFAULT_HEIGHT_CHECK_SECONDS = 30;
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("hlapi-height-check-%d")
+            .build());
+    private final GRPCObserver observer;
+
+    private final GRPCAsyncClient async;
+    private LedgerCache ledgerCache;
+    private volatile EventJournal journal;
+    private ScheduledFuture<?> heightCheck; // guarded by this
+    private volatile boolean strictChainHeight = false;
 
     public GRPCClient(String host, int port, int observerPort) {
         log.debug("Trying to connect to GRPC host:port={}:{}, host:observerPort={}:{}, ", host, port, observerPort);
         ManagedChannel channel = NettyChannelBuilder.forAddress(host, port).negotiationType(NegotiationType.PLAINTEXT).build();
         ManagedChannel observerChannel = NettyChannelBuilder.forAddress(host, observerPort).negotiationType(NegotiationType.PLAINTEXT).build();
-        pbs = PeerGrpc.newBlockingStub(channel);
-        obs = OpenchainGrpc.newBlockingStub(channel);
+        async = new GRPCAsyncClient(channel);
         observer = new GRPCObserver(observerChannel);
+        observe();
+    }
+
+    /**
+     * Create a client that spreads its calls across several peers and observes events of one of them
+     *
+     * @param peers        - peers to send transactions and queries to
+     * @param observerHost - host of the peer events are observed on
+     * @param observerPort - event port of that peer
+     */
+    public GRPCClient(PeerPool peers, String observerHost, int observerPort) {
+        log.debug("Trying to connect to GRPC peers={}, host:observerPort={}:{}", peers.getPeers(), observerHost, observerPort);
+        ManagedChannel observerChannel = NettyChannelBuilder.forAddress(observerHost, observerPort).negotiationType(NegotiationType.PLAINTEXT).build();
+        async = new GRPCAsyncClient(peers);
+        observer = new GRPCObserver(observerChannel);
+        observe();
+    }
+
+    /**
+     * Create a client that spreads its calls across several peers and observes events of several peers,
+     * every block is delivered once, as received first from any of them
+     *
+     * @param peers             - peers to send transactions and queries to
+     * @param observerAddresses - event service addresses of the peers events are observed on, in host:port form
+     */
+    public GRPCClient(PeerPool peers, List<String> observerAddresses) {
+        log.debug("Trying to connect to GRPC peers={}, observers={}", peers.getPeers(), observerAddresses);
+        List<EventSource> sources = new ArrayList<>(observerAddresses.size());
+        for (String address : observerAddresses) {
+            sources.add(EventSource.forAddress(address));
+        }
+        async = new GRPCAsyncClient(peers);
+        observer = new GRPCObserver(sources);
+        observe();
+    }
+
+    private void observe() {
+        observer.followBlocks(async.blockIndex());
+        observer.setBlocksResumed(this::checkChainTip);
+        observer.setBackfill((last, listener) -> async.catchUp(Collections.singletonList(last), 0, false, listener));
         observer.connect();
+        setHeightCheckInterval(DEFAULT_HEIGHT_CHECK_SECONDS, TimeUnit.SECONDS);
     }
 
-    private void invoke(Transaction transaction) {
-        byte[] t = transaction.toByteArray();
-        log.debug("Sending transaction of size {}", t.length);
-        ChaincodeID.Builder chaincodeId = ChaincodeID.newBuilder();
-        chaincodeId.setName(Transaction.chaincodeName);
+    /**
+     * Set how often the chain height tracked from block events is compared with the server's
+     *
+     * @param interval - time between checks, not positive to disable the check
+     * @param unit     - unit of the interval
+     */
+    public synchronized void setHeightCheckInterval(long interval, TimeUnit unit) {
+        if (heightCheck != null) {
+            heightCheck.cancel(false);
+            heightCheck = null;
+        }
+        if (interval > 0) {
+            heightCheck = scheduler.scheduleWithFixedDelay(this::checkChainTip, interval, interval, unit);
+        }
+    }
 
-        ChaincodeInput.Builder chaincodeInput = ChaincodeInput.newBuilder();
-        chaincodeInput.addArgs(ByteString.copyFrom(t));
+    /**
+     * Choose where getChainHeight reads the height from
+     *
+     * @param strictChainHeight - true to ask the server on every call,
+     *                          false to return the height tracked from block events while any are observed
+     */
+    public void setStrictChainHeight(boolean strictChainHeight) {
+        this.strictChainHeight = strictChainHeight;
+    }
 
-        ChaincodeSpec.Builder chaincodeSpec = ChaincodeSpec.newBuilder();
-        chaincodeSpec.setChaincodeID(chaincodeId);
-        chaincodeSpec.setCtorMsg(chaincodeInput);
+    /**
+     * @return ID of the highest block on the trunk as observed, null if not yet known
+     */
+    public BID getChainTip() {
+        return observer.getChainTip();
+    }
 
-        ChaincodeInvocationSpec.Builder chaincodeInvocationSpec = ChaincodeInvocationSpec.newBuilder();
-        chaincodeInvocationSpec.setChaincodeSpec(chaincodeSpec).setIdGenerationAlg("sha256");
+    // corrects the tracked tip if no block was observed while the server was asked
+    private void checkChainTip() {
+        GRPCObserver.ChainTip seen = observer.chainTip();
+        async.getChainHeight()
+                .thenCompose(height -> {
+                    if (height == seen.height && seen.id != null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    CompletableFuture<BID> id = height > 0 ? async.blockID(height - 1) : CompletableFuture.completedFuture(null);
+                    return id.thenAccept(tip -> {
+                        if (observer.correctChainTip(seen, new GRPCObserver.ChainTip(height, tip))) {
+                            log.info("Chain height set from {} to {}", seen.height, height);
+                        }
+                    });
+                })
+                .exceptionally(e -> {
+                    log.warn("Could not check chain height: {}", e.getMessage());
+                    return null;
+                });
+    }
+
+    /**
+     * Set the maximum number of transactions sendTransactions keeps in flight
+     *
+     * @param submitWindow - number of outstanding submissions
+     * @see GRPCAsyncClient#setSubmitWindow(int)
+     */
+    public void setSubmitWindow(int submitWindow) {
+        async.setSubmitWindow(submitWindow);
+    }
 
-        Fabric.Transaction.Builder tb = Fabric.Transaction.newBuilder();
-        tb.setType(Fabric.Transaction.Type.CHAINCODE_INVOKE);
-        tb.setTxid(transaction.getID().toString());
-        tb.setPayload(chaincodeInvocationSpec.build().toByteString());
-        pbs.processTransaction(tb.build());
+    /**
+     * Set the maximum number of blocks catchUp downloads in parallel
+     *
+     * @param downloadWindow - number of outstanding GetBlockByNumber calls
+     * @see GRPCAsyncClient#setDownloadWindow(int)
+     */
+    public void setDownloadWindow(int downloadWindow) {
+        async.setDownloadWindow(downloadWindow);
     }
 
-    private ByteString query(String functionName, Collection<String> args) {
-        List<ByteString> byteStringArgs = args.stream()
-                .map(ByteString::copyFromUtf8)
-                .collect(Collectors.toList());
-        Chaincode.ChaincodeID chainCodeId = Chaincode.ChaincodeID.newBuilder()
-                .setName(Transaction.chaincodeName)
-                .build();
-        Chaincode.ChaincodeInput chainCodeInput = Chaincode.ChaincodeInput.newBuilder()
-                .addArgs(ByteString.copyFromUtf8(functionName))
-                .addAllArgs(byteStringArgs)
-                .build();
+    /**
+     * Choose how transactions are submitted
+     *
+     * @param streamingSubmission - true to send transactions over a long-lived Peer.Chat stream
+     * @see GRPCAsyncClient#setStreamingSubmission(boolean)
+     */
+    public void setStreamingSubmission(boolean streamingSubmission) {
+        async.setStreamingSubmission(streamingSubmission);
+    }
+
+    /**
+     * Enable hedged reads for getTransaction and other read-only calls
+     *
+     * @param hedgingPolicy - the policy, or null to disable hedging
+     * @see GRPCAsyncClient#setHedgingPolicy(HedgingPolicy)
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        async.setHedgingPolicy(hedgingPolicy);
+    }
+
+    /**
+     * Cache transactions and blocks received from the observer and read from the network.
+     * Reads consult the cache first.
+     *
+     * @param ledgerCache - the cache, or null to disable caching
+     */
+    public synchronized void setLedgerCache(LedgerCache ledgerCache) {
+        if (this.ledgerCache != null) {
+            observer.unfollowBlocks(this.ledgerCache);
+        }
+        this.ledgerCache = ledgerCache;
+        async.setLedgerCache(ledgerCache);
+        if (ledgerCache != null) {
+            observer.followBlocks(ledgerCache);
+        }
+    }
+
+    /**
+     * Journal the blocks observed, so that consumers restarted can replay them locally
+     *
+     * @param journal - the journal, or null to stop journaling
+     * @see #replay(String, TrunkListener)
+     */
+    public void setEventJournal(EventJournal journal) {
+        this.journal = journal;
+        observer.setJournal(journal);
+    }
+
+    /**
+     * Deliver the blocks following the consumer's checkpoint, from the journal as far as it reaches
+     * and from the network from there up to the current tip.
+     * The consumer commits its checkpoint to the journal as it processes blocks.
+     *
+     * @param consumer - name of the consumer
+     * @param listener - receives the blocks in height order
+     */
+    public void replay(String consumer, TrunkListener listener) throws HLAPIException {
+        EventJournal journal = this.journal;
+        if (journal == null) {
+            throw new IllegalStateException("No event journal set");
+        }
+        int checkpoint = journal.getCheckpoint(consumer);
+        HLAPIBlock last = journal.replay(checkpoint + 1, listener);
+        List<BID> inventory;
+        if (last != null) {
+            inventory = Collections.singletonList(last.getID());
+        } else if (checkpoint >= 0) {
+            inventory = Collections.singletonList(await(async.blockID(checkpoint)));
+        } else {
+            inventory = Collections.emptyList();
+        }
+        await(async.catchUp(inventory, 0, false, listener));
+    }
+
+    /**
+     * Decode the transactions of large blocks observed in parallel
+     *
+     * @see GRPCObserver#setParallelDecoding(ForkJoinPool, int, int)
+     */
+    public void setParallelDecoding(ForkJoinPool pool, int minTransactions, int chunkSize) {
+        observer.setParallelDecoding(pool, minTransactions, chunkSize);
+    }
+
+    /**
+     * Deliver each observed transaction to listeners at most once, also across reconnects and event sources
+     *
+     * @see GRPCObserver#setDeduplication(int, int, int)
+     */
+    public void setDeduplication(int windowBlocks, int windowTransactions, int exactSize) {
+        observer.setDeduplication(windowBlocks, windowTransactions, exactSize);
+    }
+
+    /**
+     * @return a publisher of new blocks on the trunk that fetches blocks from the peer only as fast as they are requested
+     * @see GRPCObserver#publishBlocks()
+     */
+    public BlockPublisher publishBlocks() {
+        return observer.publishBlocks();
+    }
+
+    /**
+     * @return the peers events are observed on, with the number of blocks each delivered first
+     */
+    public List<EventSource> getEventSources() {
+        return observer.getEventSources();
+    }
 
-        Chaincode.ChaincodeSpec.Builder chaincodeSpec = Chaincode.ChaincodeSpec.newBuilder()
-                .setChaincodeID(chainCodeId)
-                .setCtorMsg(chainCodeInput);
-        Chaincode.ChaincodeInvocationSpec.Builder chaincodeInvocationSpec = Chaincode.ChaincodeInvocationSpec.newBuilder()
-                .setChaincodeSpec(chaincodeSpec);
-        Fabric.Transaction.Builder tb = Fabric.Transaction.newBuilder();
-        tb.setType(Fabric.Transaction.Type.CHAINCODE_QUERY);
-        tb.setPayload(chaincodeInvocationSpec.build().toByteString());
-        tb.setTxid("query-id");
-        Fabric.Response response = pbs.processTransaction(tb.build());
-        return response.getMsg();
+    /**
+     * @return the non-blocking API this client delegates to
+     */
+    public HLAPIAsync async() {
+        return async;
     }
 
     @Override
@@ -137,45 +327,38 @@ public class GRPCClient implements HLAPI {
 
     @Override
     public int getChainHeight() throws HLAPIException {
-        BlockCount height = obs.getBlockCount(com.google.protobuf.Empty.getDefaultInstance());
-        return (int) height.getCount();
+        int height = observer.getChainHeight();
+        if (strictChainHeight || height < 0 || !observer.isObservingBlocks()) {
+            height = await(async.getChainHeight());
+            observer.setChainHeight(height);
+        }
+        return height;
     }
 
 
     @Override
     public HLAPIHeader getBlockHeader(BID hash) throws HLAPIException {
-        throw new UnsupportedOperationException();
+        return await(async.getBlockHeader(hash));
     }
 
     @Override
     public HLAPIBlock getBlock(BID hash) throws HLAPIException {
-        throw new UnsupportedOperationException();
+        return await(async.getBlock(hash));
     }
 
     @Override
     public HLAPITransaction getTransaction(TID hash) throws HLAPIException {
-        try {
-            ByteString result = query("getTran", Collections.singletonList(hash.toString()));
-            byte[] resultStr = result.toByteArray();
-            if (resultStr.length == 0) return null;
-            if (result.toString("UTF8").contains(NOT_FOUND)) return null;
-            Transaction t = Transaction.fromByteArray(resultStr);
-            if (!hash.equals(t.getID())) return null;
-            return new HLAPITransaction(t, BID.INVALID);
-        } catch (StatusRuntimeException e) {
-            if (e.getMessage().contains(NOT_FOUND)) {
-                return null;
-            } else {
-                throw e;
-            }
-        } catch (IOException e) {
-            throw new HLAPIException(e);
-        }
+        return await(async.getTransaction(hash));
     }
 
     @Override
     public void sendTransaction(Transaction transaction) throws HLAPIException {
-        invoke(transaction);
+        await(async.sendTransaction(transaction));
+    }
+
+    @Override
+    public List<SubmitResult> sendTransactions(List<Transaction> transactions) throws HLAPIException {
+        return await(async.sendTransactions(transactions));
     }
 
     @Override
@@ -199,25 +382,133 @@ public class GRPCClient implements HLAPI {
         observer.subscribeToTransactions(listener);
     }
 
+    /**
+     * Register a listener with its own queue of blocks not yet delivered to it
+     *
+     * @param policy   - what to do if the listener falls behind by capacity blocks
+     * @param capacity - maximum number of blocks queued
+     * @see GRPCObserver#subscribeToTransactions(TransactionListener, OverflowPolicy, int)
+     */
+    public void registerTransactionListener(TransactionListener listener, OverflowPolicy policy, int capacity) {
+        observer.subscribeToTransactions(listener, policy, capacity);
+    }
+
+    /**
+     * Register a listener, first delivering the transactions of up to replayLast recent blocks
+     *
+     * @see GRPCObserver#subscribeToTransactions(TransactionListener, int)
+     * @see #setReplayBuffer(int, long)
+     */
+    public void registerTransactionListener(TransactionListener listener, int replayLast) {
+        observer.subscribeToTransactions(listener, replayLast);
+    }
+
     @Override
     public void removeTransactionListener(TransactionListener listener) {
         observer.unsubscribeFromTransactions(listener);
     }
 
+    @Override
+    public void registerBatchTransactionListener(BatchTransactionListener listener) throws HLAPIException {
+        observer.subscribeToTransactionBatches(listener);
+    }
+
+    /**
+     * @see #registerTransactionListener(TransactionListener, OverflowPolicy, int)
+     */
+    public void registerBatchTransactionListener(BatchTransactionListener listener, OverflowPolicy policy, int capacity) {
+        observer.subscribeToTransactionBatches(listener, policy, capacity);
+    }
+
+    @Override
+    public void removeBatchTransactionListener(BatchTransactionListener listener) {
+        observer.unsubscribeFromTransactionBatches(listener);
+    }
+
+    @Override
+    public void watchTransactions(Collection<TID> ids, TransactionListener listener) throws HLAPIException {
+        observer.watchTransactions(ids, listener);
+    }
+
+    @Override
+    public void unwatchTransactions(Collection<TID> ids, TransactionListener listener) {
+        observer.unwatchTransactions(ids, listener);
+    }
+
     @Override
     public void registerTrunkListener(TrunkListener listener) throws HLAPIException {
         observer.subscribeToBlocks(listener);
     }
 
+    /**
+     * @see #registerTransactionListener(TransactionListener, OverflowPolicy, int)
+     */
+    public void registerTrunkListener(TrunkListener listener, OverflowPolicy policy, int capacity) {
+        observer.subscribeToBlocks(listener, policy, capacity);
+    }
+
+    /**
+     * Register a listener, first delivering up to replayLast recent blocks, then new blocks without gap or duplicate
+     *
+     * @see #setReplayBuffer(int, long)
+     */
+    public void registerTrunkListener(TrunkListener listener, int replayLast) {
+        observer.subscribeToBlocks(listener, replayLast);
+    }
+
+    /**
+     * Keep recent blocks observed for listeners registered with replay
+     *
+     * @param maxBlocks - maximum number of blocks kept, 0 to keep none
+     * @param maxBytes  - maximum approximate size in bytes of the blocks kept
+     */
+    public void setReplayBuffer(int maxBlocks, long maxBytes) {
+        observer.setReplayBuffer(maxBlocks, maxBytes);
+    }
+
+    /**
+     * @return number of events queued for each listener registered
+     */
+    public Map<Object, Integer> getListenerQueueDepths() {
+        return observer.getQueueDepths();
+    }
+
     @Override
     public void removeTrunkListener(TrunkListener listener) {
         observer.unsubscribeFromBlocks(listener);
     }
 
+    /**
+     * Register a listener for events of a chaincode, only matching events are sent by the server
+     *
+     * @see GRPCObserver#subscribeToChaincodeEvents(ChaincodeEventListener, String, String)
+     */
+    public void registerChaincodeEventListener(ChaincodeEventListener listener, String chaincodeID, String eventName) {
+        observer.subscribeToChaincodeEvents(listener, chaincodeID, eventName);
+    }
+
+    /**
+     * @see #registerTransactionListener(TransactionListener, OverflowPolicy, int)
+     */
+    public void registerChaincodeEventListener(ChaincodeEventListener listener, String chaincodeID, String eventName,
+                                               OverflowPolicy policy, int capacity) {
+        observer.subscribeToChaincodeEvents(listener, chaincodeID, eventName, policy, capacity);
+    }
+
+    public void removeChaincodeEventListener(ChaincodeEventListener listener, String chaincodeID, String eventName) {
+        observer.unsubscribeFromChaincodeEvents(listener, chaincodeID, eventName);
+    }
+
+    /**
+     * Remove every registration of the listener
+     */
+    public void removeChaincodeEventListener(ChaincodeEventListener listener) {
+        observer.unsubscribeFromChaincodeEvents(listener);
+    }
+
     @Override
     public void catchUp(List<BID> inventory, int limit, boolean headers, TrunkListener listener)
             throws HLAPIException {
-        // TODO we will need this
-        throw new UnsupportedOperationException();
+        await(async.catchUp(inventory, limit, headers, listener));
     }
 }
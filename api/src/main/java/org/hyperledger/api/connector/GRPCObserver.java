@@ -16,21 +16,18 @@
 
 package org.hyperledger.api.connector;
 
-import com.google.protobuf.ByteString;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.grpc.Channel;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import org.hyperledger.api.*;
-import org.hyperledger.block.Header;
-import org.hyperledger.block.HyperledgerHeader;
-import org.hyperledger.merkletree.MerkleRoot;
-import org.hyperledger.merkletree.MerkleTree;
-import org.hyperledger.transaction.Endorser;
+import org.hyperledger.block.BID;
 import org.hyperledger.transaction.TID;
-import org.hyperledger.transaction.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import protos.Chaincode.ChaincodeInvocationSpec;
+import protos.Chaincodeevent.ChaincodeEvent;
 import protos.EventsGrpc;
+import protos.EventsOuterClass.ChaincodeReg;
 import protos.EventsOuterClass.Event;
 import protos.EventsOuterClass.EventType;
 import protos.EventsOuterClass.Interest;
@@ -39,154 +36,955 @@ import protos.Fabric;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
-import static java.util.stream.Collectors.toList;
-
+/**
+ * Observes the events of one or several peers and delivers them to listeners.
+ * Only events some listener is interested in are registered with the peer, the registration follows
+ * listeners as they are subscribed and unsubscribed. No stream is open while there are no listeners.
+ * A lost stream is reconnected with exponential backoff, blocks missed meanwhile, or while a stream is replaced
+ * to drop an interest, are backfilled before live delivery resumes.
+ */
 public class GRPCObserver {
     private static final Logger log = LoggerFactory.getLogger(GRPCObserver.class);
 
-    private EventsGrpc.EventsStub es;
-    private Set<TransactionListener> txListeners = new HashSet<>();
-    private Set<TrunkListener> trunkListeners = new HashSet<>();
-    private Set<RejectListener> rejectionListeners = new HashSet<>();
+    private static final Interest BLOCK_INTEREST = Interest.newBuilder().setEventType(EventType.BLOCK).build();
+    private static final Interest REJECTION_INTEREST = Interest.newBuilder().setEventType(EventType.REJECTION).build();
 
-    public GRPCObserver(Channel eventsChannel) {
-        es = EventsGrpc.newStub(eventsChannel);
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final Executor defaultExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("hlapi-listener-%d")
+            .build());
+    private static final ScheduledExecutorService reconnectScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("hlapi-reconnect-%d")
+                    .build());
+    private static final long MIN_RECONNECT_DELAY_MILLIS = 500;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 60_000;
+    // events delivered remembered, so that an event is not delivered twice
+    private static final int RECENT_EVENTS = 1024;
+
+    private final List<Connection> connections;
+    private volatile Executor executor = defaultExecutor;
+    private volatile ParallelDecoding parallelDecoding;
+    private volatile EventJournal journal;
+    private volatile TransactionDedup dedup;
+    private final ListenerRegistry<TransactionListener> txListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<BatchTransactionListener> batchTxListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<TrunkListener> trunkListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<RejectListener> rejectionListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<ChaincodeSubscription> chaincodeListeners = new ListenerRegistry<>();
+    private final TransactionWatches watches = new TransactionWatches();
+    // guards replay against serving, taken by subscribers with replay, never held while dispatching
+    private final RecentBlocks recent = new RecentBlocks(0, 0);
+    // serves blocks one at a time, in the order they are added to recent
+    private final Object serving = new Object();
+    // served blocks only while other listeners are interested in them
+    private final ListenerRegistry<TrunkListener> passiveTrunkListeners = new ListenerRegistry<>();
+    private final AtomicReference<ChainTip> tip = new AtomicReference<>(ChainTip.UNKNOWN);
+    private volatile Runnable blocksResumed;
+    private volatile BiFunction<BID, TrunkListener, CompletableFuture<Void>> backfill;
+    private final Set<BID> recentBlocks = recentSet();
+    // rejections and chaincode events are deduplicated if observed on several peers
+    private final Set<List<String>> recentEvents = recentSet();
+
+    // guarded by this
+    private boolean connected;
+
+    private final Object delivery = new Object();
+    // events received while backfilling or draining the backlog, delivered in order of arrival, guarded by delivery
+    private List<Runnable> backlog;
+
+    /**
+     * Height and ID of the highest block of the trunk
+     */
+    static final class ChainTip {
+        static final ChainTip UNKNOWN = new ChainTip(-1, null);
+
+        final int height;
+        final BID id;
+
+        ChainTip(int height, BID id) {
+            this.height = height;
+            this.id = id;
+        }
     }
 
-    public void connect() {
-        StreamObserver<Event> receiver = new StreamObserver<Event>() {
+    private static <T> Set<T> recentSet() {
+        return Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<T, Boolean>() {
+            private static final long serialVersionUID = 1L;
+
             @Override
-            public void onNext(Event event) {
-                try {
-                    switch (event.getEventCase()) {
-                        case BLOCK:
-                            handleBlockEvent(event);
-                            break;
-                        case REJECTION:
-                            handleRejectionEvent(event);
-                            break;
-                        default:
-                            log.info("Unhandled event {}", event);
+            protected boolean removeEldestEntry(Map.Entry<T, Boolean> eldest) {
+                return size() > RECENT_EVENTS;
+            }
+        }));
+    }
+
+    private static final class ParallelDecoding {
+        final ForkJoinPool pool;
+        final int minTransactions;
+        final int chunkSize;
+
+        ParallelDecoding(ForkJoinPool pool, int minTransactions, int chunkSize) {
+            this.pool = pool;
+            this.minTransactions = minTransactions;
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    public GRPCObserver(Channel eventsChannel) {
+        this(Collections.singletonList(new EventSource(eventsChannel.authority(), eventsChannel)));
+    }
+
+    /**
+     * Observe events on several peers. Every block is delivered once, as received first from any of them.
+     *
+     * @param sources - peers to observe
+     */
+    public GRPCObserver(List<EventSource> sources) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one event source is needed");
+        }
+        List<Connection> connections = new ArrayList<>(sources.size());
+        for (EventSource source : sources) {
+            connections.add(new Connection(source));
+        }
+        this.connections = Collections.unmodifiableList(connections);
+    }
+
+    /**
+     * @return the peers events are observed on, with statistics of the blocks received from each
+     */
+    public List<EventSource> getEventSources() {
+        List<EventSource> sources = new ArrayList<>(connections.size());
+        for (Connection connection : connections) {
+            sources.add(connection.source);
+        }
+        return sources;
+    }
+
+    /**
+     * Start observing. Events are registered with the peers as soon as a listener is interested in them.
+     */
+    public synchronized void connect() {
+        connected = true;
+        interestsChanged();
+    }
+
+    /**
+     * Interests registered with an event source, across the streams opened to it
+     */
+    private final class Connection {
+        final EventSource source;
+        final EventsGrpc.EventsStub es;
+
+        // guarded by GRPCObserver.this
+        volatile Stream stream;
+        volatile Set<Interest> registered = Collections.emptySet();
+        boolean reconnecting;
+        volatile int reconnectAttempts;
+
+        Connection(EventSource source) {
+            this.source = source;
+            this.es = EventsGrpc.newStub(source.getChannel());
+        }
+
+        // added interests are registered on the open stream, since events.proto has no message to
+        // unregister an interest the stream is replaced if one is dropped
+        void update(Set<Interest> interests) {
+            if (interests.equals(registered)) {
+                return;
+            }
+            if (stream != null && interests.containsAll(registered)) {
+                Set<Interest> added = new LinkedHashSet<>(interests);
+                added.removeAll(registered);
+                stream.register(added);
+            } else {
+                if (stream != null) {
+                    Stream closed = stream;
+                    stream = null;
+                    closed.close();
+                }
+                if (!interests.isEmpty()) {
+                    Stream opened = new Stream(this);
+                    stream = opened;
+                    opened.open(interests);
+                }
+            }
+            registered = interests;
+        }
+
+        boolean isObservingBlocks() {
+            return !reconnecting && registered.contains(BLOCK_INTEREST);
+        }
+
+        // blocks published until the new stream is registered are missed
+        boolean replacesBlockStream(Set<Interest> interests) {
+            return stream != null && registered.contains(BLOCK_INTEREST) && interests.contains(BLOCK_INTEREST)
+                    && !interests.containsAll(registered);
+        }
+    }
+
+    /**
+     * Stream of events registered with a peer. Events arriving on a stream already replaced are ignored.
+     */
+    private final class Stream implements StreamObserver<Event> {
+        private final Connection connection;
+        private StreamObserver<Event> sender;
+
+        Stream(Connection connection) {
+            this.connection = connection;
+        }
+
+        void open(Collection<Interest> interests) {
+            sender = connection.es.chat(this);
+            register(interests);
+        }
+
+        void register(Collection<Interest> interests) {
+            log.debug("Registering interests {} with {}", interests, connection.source);
+            sender.onNext(Event.newBuilder().setRegister(Register.newBuilder().addAllEvents(interests)).build());
+        }
+
+        void close() {
+            sender.onError(Status.CANCELLED.withDescription("Interests changed").asRuntimeException());
+        }
+
+        @Override
+        public void onNext(Event event) {
+            if (connection.stream != this) {
+                return;
+            }
+            connection.reconnectAttempts = 0;
+            synchronized (delivery) {
+                if (backlog != null) {
+                    backlog.add(() -> handleEvent(event, connection.source));
+                    return;
+                }
+            }
+            handleEvent(event, connection.source);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            streamLost(this, t.getMessage());
+        }
+
+        @Override
+        public void onCompleted() {
+            streamLost(this, "completed by peer");
+        }
+    }
+
+    private void handleEvent(Event event, EventSource source) {
+        try {
+            switch (event.getEventCase()) {
+                case BLOCK:
+                    handleBlockEvent(event, source);
+                    break;
+                case REJECTION:
+                    handleRejectionEvent(event);
+                    break;
+                case CHAINCODEEVENT:
+                    handleChaincodeEvent(event);
+                    break;
+                default:
+                    log.info("Unhandled event {}", event);
+            }
+        } catch (RuntimeException e) {
+            log.error("Error handling event {}, {}", event, e.getMessage());
+        }
+    }
+
+    private synchronized void streamLost(Stream lost, String reason) {
+        Connection connection = lost.connection;
+        if (connection.stream != lost) {
+            return;
+        }
+        connection.stream = null;
+        connection.reconnecting = true;
+        long delay = reconnectDelay(connection.reconnectAttempts++);
+        log.warn("Event stream to {} lost: {}, reconnecting in {} ms", connection.source, reason, delay);
+        reconnectScheduler.schedule(() -> reconnect(connection), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return delay before the next reconnect, doubling with every failed attempt up to a maximum, with jitter
+     */
+    static long reconnectDelay(int attempts) {
+        long delay = Math.min(MAX_RECONNECT_DELAY_MILLIS, MIN_RECONNECT_DELAY_MILLIS << Math.min(attempts, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    // the peer forgot every interest with the lost stream. Missed blocks are backfilled
+    // unless another peer kept delivering them.
+    private synchronized void reconnect(Connection connection) {
+        if (!connected || connection.stream != null) {
+            connection.reconnecting = false;
+            return;
+        }
+        connection.source.reconnected();
+        // while still reconnecting the connection does not count, blocks were lost unless another one observed them
+        boolean wasObservingBlocks = isObservingBlocks();
+        boolean lostBlocks = connection.registered.contains(BLOCK_INTEREST) && !wasObservingBlocks;
+        connection.reconnecting = false;
+        Set<Interest> interests = interests();
+        connection.registered = Collections.emptySet();
+        if (lostBlocks) {
+            updateLosingBlocks(Collections.singletonList(connection), interests);
+        } else {
+            connection.update(interests);
+            blocksRegistrationChanged(wasObservingBlocks);
+        }
+    }
+
+    // blocks published while no stream had them registered are backfilled after the tip, events received meanwhile
+    // are buffered. Without a backfill the tip is reset, so that it is read again.
+    private void updateLosingBlocks(List<Connection> updated, Set<Interest> interests) {
+        BID last = tip.get().id;
+        BiFunction<BID, TrunkListener, CompletableFuture<Void>> backfill = this.backfill;
+        if (backfill == null || last == null || !interests.contains(BLOCK_INTEREST)) {
+            tip.set(ChainTip.UNKNOWN);
+            updated.forEach(connection -> connection.update(interests));
+            blocksRegistrationChanged(false);
+            return;
+        }
+        List<Runnable> buffer = new ArrayList<>();
+        synchronized (delivery) {
+            if (backlog != null) {
+                buffer.addAll(backlog);
+            }
+            backlog = buffer;
+        }
+        updated.forEach(connection -> connection.update(interests));
+        List<EventSource> sources = new ArrayList<>(updated.size());
+        updated.forEach(connection -> sources.add(connection.source));
+        log.info("Event streams to {} opened, backfilling blocks after {}", sources, last);
+        backfill.apply(last, added -> added.forEach(this::handleBackfilledBlock))
+                .whenComplete((v, e) -> {
+                    if (e != null) {
+                        log.warn("Backfill after {} failed, blocks may be missing: {}", last, e.getMessage());
+                    } else {
+                        updated.forEach(connection -> connection.reconnectAttempts = 0);
                     }
-                } catch (HLAPIException e) {
-                    log.error("Error handling event {}, {}", event, e.getMessage());
+                    drainBacklog(buffer);
+                });
+    }
+
+    // events buffered while backfilling are delivered before any received later. They are run outside the delivery
+    // lock, as delivery may change interests, which needs this. The backlog stays in place while a batch is run,
+    // so that events arriving meanwhile queue up behind it.
+    private void drainBacklog(List<Runnable> buffer) {
+        List<Runnable> expected = buffer;
+        while (true) {
+            List<Runnable> batch;
+            synchronized (delivery) {
+                if (backlog != expected) {
+                    // replaced by the backlog of a later backfill, which took over the events left
+                    return;
+                }
+                if (backlog.isEmpty()) {
+                    backlog = null;
+                    return;
                 }
+                batch = backlog;
+                backlog = new ArrayList<>();
+                expected = backlog;
             }
+            for (Runnable event : batch) {
+                event.run();
+            }
+        }
+    }
 
-            @Override
-            public void onError(Throwable t) {
-                log.error("Error in stream: ", t.getMessage());
+    /**
+     * Set how blocks missed while the stream was lost are fetched
+     *
+     * @param backfill - delivers the trunk following the given block to the listener, or null to skip missed blocks
+     */
+    void setBackfill(BiFunction<BID, TrunkListener, CompletableFuture<Void>> backfill) {
+        this.backfill = backfill;
+    }
+
+    private Set<Interest> interests() {
+        Set<Interest> interests = new LinkedHashSet<>();
+        if (txListeners.snapshot().length > 0 || batchTxListeners.snapshot().length > 0
+                || trunkListeners.snapshot().length > 0 || !watches.isEmpty()) {
+            interests.add(BLOCK_INTEREST);
+        }
+        if (rejectionListeners.snapshot().length > 0) {
+            interests.add(REJECTION_INTEREST);
+        }
+        for (ListenerQueue<ChaincodeSubscription> queue : chaincodeListeners.snapshot()) {
+            ChaincodeSubscription subscription = queue.getListener();
+            interests.add(Interest.newBuilder()
+                    .setEventType(EventType.CHAINCODE)
+                    .setChaincodeRegInfo(ChaincodeReg.newBuilder()
+                            .setChaincodeID(subscription.chaincodeID)
+                            .setEventName(subscription.eventName))
+                    .build());
+        }
+        return interests;
+    }
+
+    // connections being reconnected are updated once reconnected. A stream replaced while blocks stay registered
+    // misses blocks like a lost one.
+    private synchronized void interestsChanged() {
+        if (!connected) {
+            return;
+        }
+        Set<Interest> interests = interests();
+        boolean wasObservingBlocks = isObservingBlocks();
+        List<Connection> updated = new ArrayList<>(connections.size());
+        boolean losingBlocks = false;
+        for (Connection connection : connections) {
+            if (!connection.reconnecting) {
+                updated.add(connection);
+                losingBlocks |= connection.replacesBlockStream(interests);
             }
+        }
+        if (losingBlocks) {
+            updateLosingBlocks(updated, interests);
+            return;
+        }
+        updated.forEach(connection -> connection.update(interests));
+        blocksRegistrationChanged(wasObservingBlocks);
+    }
 
-            @Override
-            public void onCompleted() {
-                log.info("Stream completed");
+    // blocks were missed while not registered, or will be
+    private void blocksRegistrationChanged(boolean wasObservingBlocks) {
+        boolean observingBlocks = isObservingBlocks();
+        if (observingBlocks == wasObservingBlocks) {
+            return;
+        }
+        tip.set(ChainTip.UNKNOWN);
+        Runnable resumed = blocksResumed;
+        if (observingBlocks && resumed != null) {
+            resumed.run();
+        }
+    }
+
+    /**
+     * @return true if block events are registered with a peer, so that the tracked chain height follows the trunk
+     */
+    public boolean isObservingBlocks() {
+        for (Connection connection : connections) {
+            if (connection.isObservingBlocks()) {
+                return true;
             }
-        };
+        }
+        return false;
+    }
 
-        StreamObserver<Event> sender = es.chat(receiver);
-        sender.onNext(createRegisterMessage());
+    /**
+     * Create a publisher of the blocks observed on the first event source, with backpressure.
+     * Subscribers have their own streams, independent of the listeners of this observer.
+     */
+    public BlockPublisher publishBlocks() {
+        return new BlockPublisher(connections.get(0).source.getChannel(),
+                () -> isObservingBlocks() ? tip.get() : ChainTip.UNKNOWN);
     }
 
-    private Event createRegisterMessage() {
-        Interest.Builder blockInterest = Interest.newBuilder().setEventType(EventType.BLOCK);
-        Interest.Builder rejectionInterest = Interest.newBuilder().setEventType(EventType.REJECTION);
+    /**
+     * Set an action to run whenever block events are registered again after a time without,
+     * the height of the trunk is unknown until set again
+     */
+    void setBlocksResumed(Runnable blocksResumed) {
+        this.blocksResumed = blocksResumed;
+    }
 
-        Register.Builder register = Register.newBuilder()
-                .addEvents(blockInterest)
-                .addEvents(rejectionInterest);
+    /**
+     * Set the height of the trunk, so that blocks observed from now on are reported with their height.
+     * Until set, blocks are reported at height 0. Has no effect once the height is known.
+     *
+     * @param height - number of blocks on the trunk, the height of the next block observed
+     */
+    public void setChainHeight(int height) {
+        tip.compareAndSet(ChainTip.UNKNOWN, new ChainTip(height, null));
+    }
 
-        return Event.newBuilder().setRegister(register).build();
+    /**
+     * @return the number of blocks on the trunk as observed, -1 if not yet known
+     */
+    public int getChainHeight() {
+        return tip.get().height;
     }
 
-    private void handleBlockEvent(Event event) throws HLAPIException {
-        HLAPIBlock block = createBlock(event.getBlock().getTransactionsList());
-        log.info("Handling new block event of {}", block.getID());
-        serveTransactionListeners(block.getTransactions());
-        serveTrunkListeners(block);
+    /**
+     * @return ID of the last block observed, null if not yet known
+     */
+    public BID getChainTip() {
+        return tip.get().id;
     }
 
-    private HLAPIBlock createBlock(List<Fabric.Transaction> txs) {
-        List<Transaction> txList = txs.stream()
-                .map(GRPCObserver::toHLTransaction)
-                .collect(toList());
+    ChainTip chainTip() {
+        return tip.get();
+    }
 
-        MerkleRoot merkleRoot = MerkleTree.computeMerkleRoot(txList);
+    /**
+     * Replace the tip with one read from the server, unless blocks were observed since expected was read
+     *
+     * @return true if corrected
+     */
+    boolean correctChainTip(ChainTip expected, ChainTip actual) {
+        return tip.compareAndSet(expected, actual);
+    }
 
-        Header header = HyperledgerHeader.create().
-                merkleRoot(merkleRoot)
-                .build(); // TODO set previous hash and time
+    private void handleBlockEvent(Event event, EventSource source) {
+        Fabric.Block fabricBlock = event.getBlock();
+        BID id = FabricConverter.blockID(fabricBlock);
+        boolean first = recentBlocks.add(id);
+        source.received(first);
+        if (!first) {
+            log.debug("Skipping block {} already delivered", id);
+            return;
+        }
+        ChainTip previous = tip.getAndUpdate(t -> t.height < 0 ? t : new ChainTip(t.height + 1, id));
+        int height = Math.max(previous.height, 0);
+        EventJournal journal = this.journal;
+        if (journal != null && previous.height >= 0) {
+            try {
+                journal.append(previous.height, fabricBlock.toByteArray());
+            } catch (IOException e) {
+                log.error("Can not journal block {}: {}", id, e.getMessage());
+            }
+        }
+        BID previousID = previous.id != null ? previous.id : BID.INVALID;
+        ParallelDecoding parallel = parallelDecoding;
+        HLAPIBlock block = parallel != null && fabricBlock.getTransactionsCount() >= parallel.minTransactions
+                ? FabricConverter.toHLAPIBlock(fabricBlock, id, height, previousID, parallel.pool, parallel.chunkSize)
+                : FabricConverter.toHLAPIBlock(fabricBlock, id, height, previousID, true);
+        serveBlock(block, previous.height >= 0);
+    }
 
-        List<HLAPITransaction> hlapiTxs = txList.stream()
-                .map(tx -> new HLAPITransaction(tx, header.getID()))
-                .collect(toList());
+    private void handleBackfilledBlock(HLAPIBlock block) {
+        if (!recentBlocks.add(block.getID())) {
+            return;
+        }
+        tip.set(new ChainTip(block.getHeight() + 1, block.getID()));
+        serveBlock(block, true);
+    }
 
-        return new HLAPIBlock.Builder()
-                .header(header)
-                .transactions(hlapiTxs)
-                .build();
+    // listeners subscribed with replay see each block either replayed or served: those registered when the block
+    // is added to recent are served. Dispatch may block on a full queue, so it is outside the lock of recent, that
+    // a listener subscribing with replay needs.
+    private void serveBlock(HLAPIBlock block, boolean heightKnown) {
+        log.info("Handling new block event of {}", block.getID());
+        synchronized (serving) {
+            ListenerQueue<TransactionListener>[] txQueues;
+            ListenerQueue<TrunkListener>[] trunkQueues;
+            synchronized (recent) {
+                recent.add(block);
+                txQueues = txListeners.snapshot();
+                trunkQueues = trunkListeners.snapshot();
+            }
+            TransactionDedup dedup = this.dedup;
+            List<HLAPITransaction> transactions = dedup == null
+                    ? block.getTransactions() : dedup.filter(block.getTransactions(), block.getHeight());
+            dispatch(txListeners, txQueues, listener -> transactionsEvent(listener, transactions));
+            serveBatchTransactionListeners(block, transactions);
+            serveWatches(transactions);
+            serveTrunkListeners(trunkQueues, block, heightKnown);
+        }
     }
 
-    private static Transaction toHLTransaction(Fabric.Transaction tx) {
-        ByteString invocationSpecBytes = tx.getPayload();
-        try {
-            ChaincodeInvocationSpec invocationSpec = ChaincodeInvocationSpec.parseFrom(invocationSpecBytes);
-            ByteString transactionBytes = invocationSpec.getChaincodeSpec().getCtorMsg().getArgs(0);
-            if (transactionBytes.size() == 0) {
-                return new Transaction(new ArrayList<TID>(), new ArrayList<byte[]>(), new ArrayList<Endorser>());
+    private void handleChaincodeEvent(Event event) {
+        ChaincodeEvent chaincodeEvent = event.getChaincodeEvent();
+        String chaincodeID = chaincodeEvent.getChaincodeID();
+        String txID = chaincodeEvent.getTxID();
+        String eventName = chaincodeEvent.getEventName();
+        if (!firstArrival(Arrays.asList(chaincodeID, txID, eventName))) {
+            return;
+        }
+        byte[] payload = chaincodeEvent.getPayload().toByteArray();
+        log.debug("Handling event {} of chaincode {} in transaction {}", eventName, chaincodeID, txID);
+        boolean disconnected = false;
+        for (ListenerQueue<ChaincodeSubscription> queue : chaincodeListeners.snapshot()) {
+            ChaincodeSubscription subscription = queue.getListener();
+            if (subscription.matches(chaincodeID, eventName)
+                    && !queue.offer(() -> subscription.listener.chaincodeEvent(chaincodeID, txID, eventName, payload))) {
+                chaincodeListeners.remove(queue);
+                disconnected = true;
             }
-            return Transaction.fromByteArray(transactionBytes.toByteArray());
-        } catch (IOException e) {
-            log.error("Error when processing transaction {}, {}", invocationSpecBytes, e.getMessage());
-            throw new RuntimeException(e);
+        }
+        if (disconnected) {
+            interestsChanged();
         }
     }
 
-    private void serveTransactionListeners(List<HLAPITransaction> transactionsList) throws HLAPIException {
-        for (HLAPITransaction tx : transactionsList) {
-            for (TransactionListener listener : txListeners) {
-                listener.process(tx);
+    private static ListenerQueue.Event transactionsEvent(TransactionListener listener, List<HLAPITransaction> transactionsList) {
+        return () -> {
+            for (HLAPITransaction tx : transactionsList) {
+                try {
+                    listener.process(tx);
+                } catch (HLAPIException e) {
+                    log.error("Transaction listener {} failed on {}: {}", listener, tx.getID(), e.getMessage());
+                }
             }
+        };
+    }
+
+    // blocks without transactions are not delivered
+    private void serveBatchTransactionListeners(HLAPIBlock block, List<HLAPITransaction> transactions) {
+        if (transactions.isEmpty()) {
+            return;
         }
+        dispatch(batchTxListeners, listener -> () -> {
+            try {
+                listener.process(transactions, block.getID(), block.getHeight());
+            } catch (HLAPIException e) {
+                log.error("Batch transaction listener {} failed on block {}: {}", listener, block.getID(), e.getMessage());
+            }
+        });
     }
 
-    private void serveTrunkListeners(HLAPIBlock block) {
-        for (TrunkListener listener : trunkListeners) {
-            listener.trunkUpdate(Collections.singletonList(block));
+    private void serveWatches(List<HLAPITransaction> transactionsList) {
+        Map<ListenerQueue<TransactionListener>, List<HLAPITransaction>> matched = watches.take(transactionsList);
+        if (matched.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<ListenerQueue<TransactionListener>, List<HLAPITransaction>> e : matched.entrySet()) {
+            TransactionListener listener = e.getKey().getListener();
+            List<HLAPITransaction> transactions = e.getValue();
+            e.getKey().offer(() -> {
+                for (HLAPITransaction tx : transactions) {
+                    try {
+                        listener.process(tx);
+                    } catch (HLAPIException ex) {
+                        log.error("Transaction listener {} failed on {}: {}", listener, tx.getID(), ex.getMessage());
+                    }
+                }
+            });
+        }
+        if (watches.isEmpty()) {
+            interestsChanged();
         }
     }
 
+    // followers index and cache blocks by height, they get no block reported at height 0 for want of a known height
+    private void serveTrunkListeners(ListenerQueue<TrunkListener>[] queues, HLAPIBlock block, boolean heightKnown) {
+        List<HLAPIBlock> added = Collections.singletonList(block);
+        dispatch(trunkListeners, queues, listener -> () -> listener.trunkUpdate(added));
+        if (heightKnown) {
+            dispatch(passiveTrunkListeners, listener -> () -> listener.trunkUpdate(added));
+        }
+    }
+
+    private <L> void dispatch(ListenerRegistry<L> listeners, Function<L, ListenerQueue.Event> event) {
+        dispatch(listeners, listeners.snapshot(), event);
+    }
+
+    // listeners disconnected by their overflow policy are removed
+    private <L> void dispatch(ListenerRegistry<L> listeners, ListenerQueue<L>[] queues,
+                              Function<L, ListenerQueue.Event> event) {
+        boolean disconnected = false;
+        for (ListenerQueue<L> queue : queues) {
+            if (!queue.offer(event.apply(queue.getListener()))) {
+                listeners.remove(queue);
+                disconnected = true;
+            }
+        }
+        if (disconnected) {
+            interestsChanged();
+        }
+    }
+
+    private boolean firstArrival(List<String> event) {
+        return connections.size() == 1 || recentEvents.add(event);
+    }
+
     private void handleRejectionEvent(Event event) {
         String reason = event.getRejection().getErrorMsg();
-        TID txId = toHLTransaction(event.getRejection().getTx()).getID();
-        log.info("Handle rejection of txid={} uuid={} because {}", txId, txId.toUuidString(), reason);
-        for (RejectListener listener : rejectionListeners) {
-            listener.rejected("invoke", txId, reason, 0);
+        TID txId = FabricConverter.toHLTransaction(event.getRejection().getTx()).getID();
+        if (!firstArrival(Arrays.asList(txId.toString(), reason))) {
+            return;
         }
+        log.info("Handle rejection of txid={} uuid={} because {}", txId, txId.toUuidString(), reason);
+        dispatch(rejectionListeners, listener -> () -> listener.rejected("invoke", txId, reason, 0));
+    }
+
+    /**
+     * Decode the transactions of large blocks and compute their merkle root in parallel.
+     * Transactions of blocks decoded in parallel are decoded completely rather than on first access.
+     *
+     * @param pool            - pool to decode on, or null to decode every block on the event thread
+     * @param minTransactions - blocks with fewer transactions are decoded on the event thread
+     * @param chunkSize       - number of transaction IDs a merkle root task compresses
+     */
+    public void setParallelDecoding(ForkJoinPool pool, int minTransactions, int chunkSize) {
+        parallelDecoding = pool == null ? null : new ParallelDecoding(pool, minTransactions, chunkSize);
+    }
+
+    /**
+     * Append every block observed with a known height to the journal
+     *
+     * @param journal - the journal, or null to stop journaling
+     */
+    public void setJournal(EventJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Deliver each transaction to transaction, batch and watch listeners at most once, even if its block is observed
+     * again after a reconnect, on an other event source, or the transaction is included in an other block.
+     * Memory is fixed at about 8.4 MB per million transactions of the window, plus the exact set.
+     *
+     * @param windowBlocks       - blocks a transaction is remembered for at least, 0 for no height window
+     * @param windowTransactions - transactions a window holds, older ones are forgotten once exceeded
+     * @param exactSize          - number of most recent transaction IDs kept exactly, older ones are kept in a
+     *                           filter with a false positive rate of about 2 in 10^9, that drops transactions only
+     *                           of blocks older than those of the exact IDs
+     */
+    public void setDeduplication(int windowBlocks, int windowTransactions, int exactSize) {
+        dedup = new TransactionDedup(windowBlocks, windowTransactions, exactSize);
+    }
+
+    public void disableDeduplication() {
+        dedup = null;
+    }
+
+    /**
+     * @return number of transactions not delivered because they were delivered before
+     */
+    public long getDuplicatesDropped() {
+        TransactionDedup dedup = this.dedup;
+        return dedup == null ? 0 : dedup.getDropped();
+    }
+
+    /**
+     * Set the executor listeners subscribed from now on are called on, by default a shared pool of daemon threads
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
     }
 
     public void subscribeToTransactions(TransactionListener l) {
-        txListeners.add(l);
+        subscribeToTransactions(l, OverflowPolicy.BLOCK, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Subscribe a listener with its own queue of blocks not yet delivered to it
+     *
+     * @param policy   - what to do if the queue is full
+     * @param capacity - maximum number of blocks queued
+     */
+    public void subscribeToTransactions(TransactionListener l, OverflowPolicy policy, int capacity) {
+        subscribe(txListeners, l, policy, capacity);
+    }
+
+    /**
+     * Subscribe a listener, first delivering the transactions of recent blocks kept for replay.
+     * No block is missed or delivered twice between replay and live delivery.
+     *
+     * @param replayLast - number of recent blocks to replay, fewer if fewer are kept
+     * @see #setReplayBuffer(int, long)
+     */
+    public void subscribeToTransactions(TransactionListener l, int replayLast) {
+        subscribeWithReplay(txListeners, l, replayLast, blocks -> {
+            List<HLAPITransaction> transactions = new ArrayList<>();
+            blocks.forEach(block -> transactions.addAll(block.getTransactions()));
+            return transactionsEvent(l, transactions);
+        });
     }
 
     public void unsubscribeFromTransactions(TransactionListener l) {
-        txListeners.remove(l);
+        unsubscribe(txListeners, l);
+    }
+
+    public void subscribeToTransactionBatches(BatchTransactionListener l) {
+        subscribeToTransactionBatches(l, OverflowPolicy.BLOCK, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @see #subscribeToTransactions(TransactionListener, OverflowPolicy, int)
+     */
+    public void subscribeToTransactionBatches(BatchTransactionListener l, OverflowPolicy policy, int capacity) {
+        subscribe(batchTxListeners, l, policy, capacity);
+    }
+
+    public void unsubscribeFromTransactionBatches(BatchTransactionListener l) {
+        unsubscribe(batchTxListeners, l);
+    }
+
+    /**
+     * Deliver the transactions with the given IDs to the listener as they are observed in blocks.
+     * Each transaction is delivered once, its watch is removed on delivery.
+     * Block events stay registered while any transaction is watched.
+     */
+    public void watchTransactions(Collection<TID> ids, TransactionListener l) {
+        watches.watch(ids, l, k -> new ListenerQueue<>(k, executor, OverflowPolicy.BLOCK, DEFAULT_QUEUE_CAPACITY));
+        interestsChanged();
+    }
+
+    /**
+     * Remove watches not yet delivered
+     */
+    public void unwatchTransactions(Collection<TID> ids, TransactionListener l) {
+        watches.unwatch(ids, l);
+        interestsChanged();
+    }
+
+    /**
+     * @return number of transactions watched and not yet observed
+     */
+    public int getWatchedTransactionCount() {
+        return watches.size();
     }
 
     public void subscribeToBlocks(TrunkListener l) {
-        trunkListeners.add(l);
+        subscribeToBlocks(l, OverflowPolicy.BLOCK, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @see #subscribeToTransactions(TransactionListener, OverflowPolicy, int)
+     */
+    public void subscribeToBlocks(TrunkListener l, OverflowPolicy policy, int capacity) {
+        subscribe(trunkListeners, l, policy, capacity);
+    }
+
+    /**
+     * Subscribe a listener, first delivering recent blocks kept for replay in one trunk update
+     *
+     * @see #subscribeToTransactions(TransactionListener, int)
+     */
+    public void subscribeToBlocks(TrunkListener l, int replayLast) {
+        subscribeWithReplay(trunkListeners, l, replayLast, blocks -> () -> l.trunkUpdate(blocks));
+    }
+
+    /**
+     * Keep recent blocks observed, so that listeners subscribed later can replay them
+     *
+     * @param maxBlocks - maximum number of blocks kept, 0 to keep none
+     * @param maxBytes  - maximum approximate size in bytes of the blocks kept
+     */
+    public void setReplayBuffer(int maxBlocks, long maxBytes) {
+        recent.resize(maxBlocks, maxBytes);
+    }
+
+    private <L> void subscribeWithReplay(ListenerRegistry<L> listeners, L l, int replayLast,
+                                         Function<List<HLAPIBlock>, ListenerQueue.Event> replay) {
+        ListenerQueue<L> previous;
+        synchronized (recent) {
+            ListenerQueue<L> queue = new ListenerQueue<>(l, executor, OverflowPolicy.BLOCK, DEFAULT_QUEUE_CAPACITY);
+            List<HLAPIBlock> blocks = recent.last(replayLast);
+            if (!blocks.isEmpty()) {
+                queue.offer(replay.apply(blocks));
+            }
+            previous = listeners.add(queue);
+        }
+        if (previous != null) {
+            previous.disconnect();
+        }
+        interestsChanged();
     }
 
     public void unsubscribeFromBlocks(TrunkListener l) {
-        trunkListeners.remove(l);
+        unsubscribe(trunkListeners, l);
     }
 
     public void subscribeToRejections(RejectListener l) {
-        rejectionListeners.add(l);
+        subscribeToRejections(l, OverflowPolicy.BLOCK, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param capacity - maximum number of rejections queued
+     * @see #subscribeToTransactions(TransactionListener, OverflowPolicy, int)
+     */
+    public void subscribeToRejections(RejectListener l, OverflowPolicy policy, int capacity) {
+        subscribe(rejectionListeners, l, policy, capacity);
     }
 
     public void unsubscribeFromRejections(RejectListener l) {
-        rejectionListeners.remove(l);
+        unsubscribe(rejectionListeners, l);
+    }
+
+    /**
+     * Subscribe to events of a chaincode. The peer sends only events matching a subscription.
+     *
+     * @param chaincodeID - the chaincode emitting events
+     * @param eventName   - name or regular expression matching the names of events, empty for all events of the chaincode
+     */
+    public void subscribeToChaincodeEvents(ChaincodeEventListener l, String chaincodeID, String eventName) {
+        subscribeToChaincodeEvents(l, chaincodeID, eventName, OverflowPolicy.BLOCK, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param capacity - maximum number of events queued
+     * @see #subscribeToTransactions(TransactionListener, OverflowPolicy, int)
+     */
+    public void subscribeToChaincodeEvents(ChaincodeEventListener l, String chaincodeID, String eventName,
+                                           OverflowPolicy policy, int capacity) {
+        subscribe(chaincodeListeners, new ChaincodeSubscription(l, chaincodeID, eventName), policy, capacity);
+    }
+
+    public void unsubscribeFromChaincodeEvents(ChaincodeEventListener l, String chaincodeID, String eventName) {
+        unsubscribe(chaincodeListeners, new ChaincodeSubscription(l, chaincodeID, eventName));
+    }
+
+    /**
+     * Remove every subscription of the listener
+     */
+    public void unsubscribeFromChaincodeEvents(ChaincodeEventListener l) {
+        for (ListenerQueue<ChaincodeSubscription> queue : chaincodeListeners.snapshot()) {
+            if (queue.getListener().listener.equals(l)) {
+                chaincodeListeners.remove(queue);
+                queue.disconnect();
+            }
+        }
+        interestsChanged();
+    }
+
+    /**
+     * Serve blocks to a listener while other listeners keep block events registered,
+     * without registering block events for it. Blocks observed while the height of the trunk is unknown are not served.
+     */
+    void followBlocks(TrunkListener l) {
+        subscribe(passiveTrunkListeners, l, OverflowPolicy.BLOCK, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    void unfollowBlocks(TrunkListener l) {
+        unsubscribe(passiveTrunkListeners, l);
+    }
+
+    private <L> void subscribe(ListenerRegistry<L> listeners, L l, OverflowPolicy policy, int capacity) {
+        ListenerQueue<L> previous = listeners.add(new ListenerQueue<>(l, executor, policy, capacity));
+        if (previous != null) {
+            previous.disconnect();
+        }
+        interestsChanged();
+    }
+
+    // events not yet delivered are discarded
+    private <L> void unsubscribe(ListenerRegistry<L> listeners, L l) {
+        ListenerQueue<L> queue = listeners.remove(l);
+        if (queue != null) {
+            queue.disconnect();
+            interestsChanged();
+        }
+    }
+
+    /**
+     * @return number of events queued for each listener, summed for listeners subscribed to several kinds of event
+     */
+    public Map<Object, Integer> getQueueDepths() {
+        Map<Object, Integer> depths = new HashMap<>();
+        for (ListenerRegistry<?> listeners : Arrays.asList(txListeners, batchTxListeners, trunkListeners, rejectionListeners)) {
+            for (ListenerQueue<?> queue : listeners.snapshot()) {
+                depths.merge(queue.getListener(), queue.getDepth(), Integer::sum);
+            }
+        }
+        for (ListenerQueue<ChaincodeSubscription> queue : chaincodeListeners.snapshot()) {
+            depths.merge(queue.getListener().listener, queue.getDepth(), Integer::sum);
+        }
+        for (ListenerQueue<TransactionListener> queue : watches.queues()) {
+            depths.merge(queue.getListener(), queue.getDepth(), Integer::sum);
+        }
+        return depths;
     }
 }
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Configuration and statistics of hedged reads.
+ * A read-only call that did not answer within the given percentile of recently observed read latencies is
+ * sent again to another peer, the first successful answer is used.
+ *
+ * @see GRPCAsyncClient#setHedgingPolicy(HedgingPolicy)
+ */
+public class HedgingPolicy {
+    private static final int SAMPLES = 1024;
+    private static final int RECOMPUTE_EVERY = 64;
+
+    static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("hlapi-hedge-%d")
+            .build());
+
+    private final double percentile;
+    private final long minDelayNanos;
+
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+
+    // guarded by this
+    private final long[] latencies = new long[SAMPLES];
+    private int next;
+    private int count;
+    private int sinceRecompute;
+    private volatile long delayNanos;
+
+    /**
+     * @param percentile - percentile of read latencies after which a hedge is sent, e.g. 0.95
+     * @param minDelay   - minimum delay before a hedge is sent, also used until enough latencies were observed
+     * @param unit       - unit of minDelay
+     */
+    public HedgingPolicy(double percentile, long minDelay, TimeUnit unit) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1");
+        }
+        this.percentile = percentile;
+        this.minDelayNanos = unit.toNanos(minDelay);
+        this.delayNanos = minDelayNanos;
+    }
+
+    /**
+     * @return current delay after which a read is hedged
+     */
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return number of duplicate reads sent
+     */
+    public long getHedgesSent() {
+        return hedgesSent.get();
+    }
+
+    /**
+     * @return number of duplicate reads that answered first
+     */
+    public long getHedgesWon() {
+        return hedgesWon.get();
+    }
+
+    void hedgeSent() {
+        hedgesSent.incrementAndGet();
+    }
+
+    void hedgeWon() {
+        hedgesWon.incrementAndGet();
+    }
+
+    synchronized void record(long nanos) {
+        latencies[next] = nanos;
+        next = (next + 1) % SAMPLES;
+        count = Math.min(count + 1, SAMPLES);
+        if (++sinceRecompute == RECOMPUTE_EVERY) {
+            sinceRecompute = 0;
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            delayNanos = Math.max(minDelayNanos, sorted[(int) (percentile * (sorted.length - 1))]);
+        }
+    }
+}
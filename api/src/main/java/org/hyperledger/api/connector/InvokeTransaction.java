@@ -0,0 +1,196 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.protobuf.ProtoUtils;
+import org.hyperledger.transaction.Transaction;
+import protos.Fabric;
+import protos.PeerGrpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import static com.google.protobuf.CodedOutputStream.*;
+
+/**
+ * The Fabric.Transaction invoking the transaction creator chaincode with a serialized transaction, encoded in a
+ * single pass. The nested ChaincodeInvocationSpec is written inline with the outer message instead of being
+ * serialized into the payload first, so the transaction bytes are copied once on their way to the transport.
+ */
+final class InvokeTransaction {
+    /**
+     * Peer.ProcessTransaction sending the invocation without building the Fabric.Transaction message
+     */
+    static final MethodDescriptor<InvokeTransaction, Fabric.Response> METHOD_PROCESS_TRANSACTION =
+            MethodDescriptor.create(MethodDescriptor.MethodType.UNARY,
+                    PeerGrpc.METHOD_PROCESS_TRANSACTION.getFullMethodName(),
+                    new InvokeMarshaller(),
+                    ProtoUtils.marshaller(Fabric.Response.getDefaultInstance()));
+
+    private static final String ID_GENERATION_ALG = "sha256";
+
+    private final ByteString transaction;
+    private final String txid;
+    private final int chaincodeIDSize;
+    private final int inputSize;
+    private final int specSize;
+    private final int invocationSize;
+    private final int size;
+
+    InvokeTransaction(Transaction transaction) {
+        this.transaction = transaction.toByteString();
+        this.txid = transaction.getID().toString();
+        chaincodeIDSize = computeStringSize(2, Transaction.chaincodeName);
+        inputSize = computeBytesSize(1, this.transaction);
+        specSize = computeNestedSize(2, chaincodeIDSize) + computeNestedSize(3, inputSize);
+        invocationSize = computeNestedSize(1, specSize) + computeStringSize(2, ID_GENERATION_ALG);
+        size = computeEnumSize(1, Fabric.Transaction.Type.CHAINCODE_INVOKE.getNumber())
+                + computeNestedSize(3, invocationSize)
+                + computeStringSize(5, txid);
+    }
+
+    private static int computeNestedSize(int field, int size) {
+        return computeTagSize(field) + computeUInt32SizeNoTag(size) + size;
+    }
+
+    String getTxid() {
+        return txid;
+    }
+
+    int getSerializedSize() {
+        return size;
+    }
+
+    /**
+     * Write the invocation in the field order of Fabric.Transaction, ChaincodeInvocationSpec, ChaincodeSpec,
+     * ChaincodeID and ChaincodeInput.
+     */
+    void writeTo(CodedOutputStream out) throws IOException {
+        out.writeEnum(1, Fabric.Transaction.Type.CHAINCODE_INVOKE.getNumber());
+        writeNestedHeader(out, 3, invocationSize);
+        writeNestedHeader(out, 1, specSize);
+        writeNestedHeader(out, 2, chaincodeIDSize);
+        out.writeString(2, Transaction.chaincodeName);
+        writeNestedHeader(out, 3, inputSize);
+        out.writeBytes(1, transaction);
+        out.writeString(2, ID_GENERATION_ALG);
+        out.writeString(5, txid);
+    }
+
+    private static void writeNestedHeader(CodedOutputStream out, int field, int size) throws IOException {
+        out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeUInt32NoTag(size);
+    }
+
+    /**
+     * @return the encoded Fabric.Transaction, e.g. as payload of a chat message
+     */
+    ByteString toByteString() {
+        ByteString.Output bytes = ByteString.newOutput(size);
+        try {
+            CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+            writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteString();
+    }
+
+    private static final class InvokeMarshaller implements MethodDescriptor.Marshaller<InvokeTransaction> {
+        @Override
+        public InputStream stream(InvokeTransaction value) {
+            return new InvokeStream(value);
+        }
+
+        @Override
+        public InvokeTransaction parse(InputStream stream) {
+            throw new UnsupportedOperationException("Invocations are only sent");
+        }
+    }
+
+    /**
+     * Drained by the transport straight into its buffers. Read as a plain stream only if the transport does not
+     * drain it, in which case the invocation is encoded into an array first.
+     */
+    private static final class InvokeStream extends InputStream implements Drainable, KnownLength {
+        private InvokeTransaction message;
+        private ByteArrayInputStream partial;
+
+        InvokeStream(InvokeTransaction message) {
+            this.message = message;
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+            if (message != null) {
+                int written = message.size;
+                CodedOutputStream out = CodedOutputStream.newInstance(target);
+                message.writeTo(out);
+                out.flush();
+                message = null;
+                return written;
+            }
+            int written = 0;
+            if (partial != null) {
+                written = partial.available();
+                byte[] rest = new byte[written];
+                partial.read(rest, 0, written);
+                target.write(rest);
+                partial = null;
+            }
+            return written;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return buffer().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return buffer().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (message != null) {
+                return message.size;
+            }
+            return partial != null ? partial.available() : 0;
+        }
+
+        private ByteArrayInputStream buffer() {
+            if (message != null) {
+                partial = new ByteArrayInputStream(message.toByteString().toByteArray());
+                message = null;
+            } else if (partial == null) {
+                partial = new ByteArrayInputStream(new byte[0]);
+            }
+            return partial;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.api.HLAPITransaction;
+import org.hyperledger.api.TrunkListener;
+import org.hyperledger.block.BID;
+import org.hyperledger.common.Hash;
+import org.hyperledger.transaction.TID;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A size bounded cache of transactions and blocks, weighted by their approximate size in bytes.
+ * <p>
+ * New entries enter a small LRU window. Entries leaving the window compete for a place in the main area with its
+ * least recently used entry, the one seen more often recently wins (W-TinyLFU admission). The main area is a
+ * segmented LRU, entries hit in the probation segment are promoted to the protected segment.
+ * <p>
+ * As a TrunkListener the cache is fed with every transaction and block the observer receives.
+ */
+public class LedgerCache implements TrunkListener {
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int AVERAGE_ENTRY_WEIGHT = 512;
+
+    private enum Segment {WINDOW, PROBATION, PROTECTED}
+
+    private static class Node {
+        final Hash key;
+        Object value;
+        long weight;
+        Segment segment;
+
+        Node(Hash key, Object value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.segment = Segment.WINDOW;
+        }
+    }
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long mainMaximum;
+
+    // guarded by this
+    private final Map<Hash, Node> data = new HashMap<>();
+    private final LinkedHashMap<Hash, Node> window = new LinkedHashMap<>();
+    private final LinkedHashMap<Hash, Node> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<Hash, Node> protectedSegment = new LinkedHashMap<>();
+    private final FrequencySketch sketch;
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maximumWeight - approximate number of bytes the cached objects may occupy
+     */
+    public LedgerCache(long maximumWeight) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive");
+        }
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, maximumWeight / 100);
+        this.mainMaximum = maximumWeight - windowMaximum;
+        this.protectedMaximum = mainMaximum * 8 / 10;
+        this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, maximumWeight / AVERAGE_ENTRY_WEIGHT));
+    }
+
+    @Override
+    public void trunkUpdate(List<HLAPIBlock> added) {
+        for (HLAPIBlock block : added) {
+            putBlock(block);
+        }
+    }
+
+    /**
+     * @return cached transaction or null
+     */
+    public HLAPITransaction getTransaction(TID ID) {
+        return (HLAPITransaction) get(ID);
+    }
+
+    /**
+     * @return cached block or null
+     */
+    public HLAPIBlock getBlock(BID ID) {
+        return (HLAPIBlock) get(ID);
+    }
+
+    public void putTransaction(HLAPITransaction transaction) {
+        put(transaction.getID(), transaction, weigh(transaction));
+    }
+
+    /**
+     * Cache a block and each of its transactions
+     */
+    public void putBlock(HLAPIBlock block) {
+        long weight = ENTRY_OVERHEAD;
+        for (HLAPITransaction transaction : block.getTransactions()) {
+            long transactionWeight = weigh(transaction);
+            put(transaction.getID(), transaction, transactionWeight);
+            weight += transactionWeight;
+        }
+        put(block.getID(), block, weight);
+    }
+
+    // the serialized size, so that weighing does not decode a transaction read lazily
+    static long weigh(HLAPITransaction transaction) {
+        return ENTRY_OVERHEAD + transaction.toByteString().size();
+    }
+
+    private synchronized Object get(Hash key) {
+        Node node = data.get(key);
+        if (node == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        sketch.increment(key);
+        onHit(node);
+        return node.value;
+    }
+
+    private synchronized void put(Hash key, Object value, long weight) {
+        if (key == null || weight > maximumWeight) {
+            return;
+        }
+        sketch.increment(key);
+        Node node = data.get(key);
+        if (node != null) {
+            node.value = value;
+            addWeight(node.segment, weight - node.weight);
+            node.weight = weight;
+            onHit(node);
+        } else {
+            node = new Node(key, value, weight);
+            data.put(key, node);
+            window.put(key, node);
+            windowWeight += weight;
+        }
+        evict();
+    }
+
+    private void onHit(Node node) {
+        switch (node.segment) {
+            case WINDOW:
+                moveToTail(window, node);
+                break;
+            case PROBATION:
+                probation.remove(node.key);
+                probationWeight -= node.weight;
+                node.segment = Segment.PROTECTED;
+                protectedSegment.put(node.key, node);
+                protectedWeight += node.weight;
+                while (protectedWeight > protectedMaximum) {
+                    Node demoted = head(protectedSegment);
+                    protectedSegment.remove(demoted.key);
+                    protectedWeight -= demoted.weight;
+                    demoted.segment = Segment.PROBATION;
+                    probation.put(demoted.key, demoted);
+                    probationWeight += demoted.weight;
+                }
+                break;
+            case PROTECTED:
+                moveToTail(protectedSegment, node);
+                break;
+        }
+    }
+
+    private void evict() {
+        while (windowWeight > windowMaximum) {
+            Node candidate = head(window);
+            window.remove(candidate.key);
+            windowWeight -= candidate.weight;
+            candidate.segment = Segment.PROBATION;
+            probation.put(candidate.key, candidate);
+            probationWeight += candidate.weight;
+            admit(candidate);
+        }
+        while (probationWeight + protectedWeight > mainMaximum) {
+            remove(probation.isEmpty() ? head(protectedSegment) : head(probation));
+        }
+    }
+
+    // make room in the main area, the candidate or the least recently used main entries are evicted
+    private void admit(Node candidate) {
+        while (probationWeight + protectedWeight > mainMaximum) {
+            Node victim = probation.isEmpty() ? head(protectedSegment) : head(probation);
+            if (victim == candidate || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                remove(candidate);
+                return;
+            }
+            remove(victim);
+        }
+    }
+
+    private void remove(Node node) {
+        data.remove(node.key);
+        if (node.segment == Segment.PROTECTED) {
+            protectedSegment.remove(node.key);
+        } else {
+            probation.remove(node.key);
+        }
+        addWeight(node.segment, -node.weight);
+        evictionCount++;
+    }
+
+    private void addWeight(Segment segment, long delta) {
+        switch (segment) {
+            case WINDOW:
+                windowWeight += delta;
+                break;
+            case PROBATION:
+                probationWeight += delta;
+                break;
+            case PROTECTED:
+                protectedWeight += delta;
+                break;
+        }
+    }
+
+    private static void moveToTail(LinkedHashMap<Hash, Node> segment, Node node) {
+        segment.remove(node.key);
+        segment.put(node.key, node);
+    }
+
+    private static Node head(LinkedHashMap<Hash, Node> segment) {
+        Iterator<Node> iterator = segment.values().iterator();
+        return iterator.next();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return number of cached transactions and blocks
+     */
+    public synchronized int size() {
+        return data.size();
+    }
+
+    /**
+     * @return approximate number of bytes occupied by cached objects
+     */
+    public synchronized long getWeightedSize() {
+        return windowWeight + probationWeight + protectedWeight;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LedgerCache{size=" + data.size() + ", weight=" + getWeightedSize() + "/" + maximumWeight +
+                ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "}";
+    }
+}
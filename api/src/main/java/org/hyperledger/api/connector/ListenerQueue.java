@@ -0,0 +1,153 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Bounded queue of events for one listener. Events are delivered on the executor in the order queued,
+ * one at a time, so a slow or failing listener does not hold up the others.
+ */
+class ListenerQueue<L> {
+    private static final Logger log = LoggerFactory.getLogger(ListenerQueue.class);
+    // events delivered before the drain task yields to other listeners on the executor
+    private static final int MAX_DRAIN = 64;
+
+    interface Event {
+        void deliver() throws Exception;
+    }
+
+    private final L listener;
+    private final Executor executor;
+    private final OverflowPolicy policy;
+    private final Event[] ring; // guarded by this
+    private int head; // guarded by this
+    private int count; // guarded by this
+    private boolean draining; // guarded by this
+    private boolean disconnected; // guarded by this
+    private long dropped; // guarded by this
+
+    ListenerQueue(L listener, Executor executor, OverflowPolicy policy, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.listener = listener;
+        this.executor = executor;
+        this.policy = policy;
+        this.ring = new Event[capacity];
+    }
+
+    /**
+     * Queue an event for delivery. If interrupted while waiting for space the listener is disconnected,
+     * as it would miss the event, and the interrupt is kept.
+     *
+     * @return false if the listener is disconnected
+     */
+    boolean offer(Event event) {
+        boolean schedule = false;
+        synchronized (this) {
+            while (count == ring.length && !disconnected) {
+                switch (policy) {
+                    case BLOCK:
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            log.warn("Disconnecting listener {}, interrupted while waiting to queue an event", listener);
+                            disconnect();
+                        }
+                        break;
+                    case DROP_OLDEST:
+                        poll();
+                        dropped++;
+                        break;
+                    case DISCONNECT:
+                        log.warn("Disconnecting listener {} with {} events queued", listener, count);
+                        disconnect();
+                        break;
+                }
+            }
+            if (disconnected) {
+                return false;
+            }
+            ring[(head + count) % ring.length] = event;
+            count++;
+            if (!draining) {
+                draining = true;
+                schedule = true;
+            }
+        }
+        if (schedule) {
+            executor.execute(this::drain);
+        }
+        return true;
+    }
+
+    private void drain() {
+        for (int i = 0; i < MAX_DRAIN; i++) {
+            Event event;
+            synchronized (this) {
+                if (count == 0) {
+                    draining = false;
+                    return;
+                }
+                event = poll();
+                notifyAll();
+            }
+            try {
+                event.deliver();
+            } catch (Exception e) {
+                log.error("Listener {} failed: {}", listener, e.getMessage());
+            }
+        }
+        executor.execute(this::drain);
+    }
+
+    private Event poll() {
+        Event event = ring[head];
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        count--;
+        return event;
+    }
+
+    /**
+     * Discard events queued and refuse further events
+     */
+    synchronized void disconnect() {
+        while (count > 0) {
+            poll();
+        }
+        disconnected = true;
+        notifyAll();
+    }
+
+    synchronized int getDepth() {
+        return count;
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    L getListener() {
+        return listener;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copy-on-write registry of listener queues. Dispatch iterates a snapshot array without locking,
+ * registration replaces the array by compare-and-set and is safe from any thread.
+ */
+class ListenerRegistry<L> {
+    private static final ListenerQueue<?>[] EMPTY = new ListenerQueue<?>[0];
+
+    @SuppressWarnings("unchecked")
+    private final AtomicReference<ListenerQueue<L>[]> queues = new AtomicReference<>((ListenerQueue<L>[]) EMPTY);
+
+    /**
+     * @return the queues registered at the time of the call, not to be modified
+     */
+    ListenerQueue<L>[] snapshot() {
+        return queues.get();
+    }
+
+    /**
+     * Register a queue, replacing the queue of the same listener
+     *
+     * @return the queue replaced, or null
+     */
+    ListenerQueue<L> add(ListenerQueue<L> queue) {
+        while (true) {
+            ListenerQueue<L>[] current = queues.get();
+            int i = indexOf(current, queue.getListener());
+            ListenerQueue<L>[] next = Arrays.copyOf(current, i < 0 ? current.length + 1 : current.length);
+            next[i < 0 ? current.length : i] = queue;
+            if (queues.compareAndSet(current, next)) {
+                return i < 0 ? null : current[i];
+            }
+        }
+    }
+
+    /**
+     * Unregister the queue of a listener
+     *
+     * @return the queue removed, or null
+     */
+    ListenerQueue<L> remove(L listener) {
+        while (true) {
+            ListenerQueue<L>[] current = queues.get();
+            int i = indexOf(current, listener);
+            if (i < 0) {
+                return null;
+            }
+            if (queues.compareAndSet(current, without(current, i))) {
+                return current[i];
+            }
+        }
+    }
+
+    /**
+     * Unregister a queue, unless its listener was registered again with a new queue
+     */
+    void remove(ListenerQueue<L> queue) {
+        while (true) {
+            ListenerQueue<L>[] current = queues.get();
+            int i = indexOf(current, queue.getListener());
+            if (i < 0 || current[i] != queue || queues.compareAndSet(current, without(current, i))) {
+                return;
+            }
+        }
+    }
+
+    private static <L> int indexOf(ListenerQueue<L>[] queues, L listener) {
+        for (int i = 0; i < queues.length; i++) {
+            if (queues[i].getListener().equals(listener)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static <L> ListenerQueue<L>[] without(ListenerQueue<L>[] queues, int i) {
+        ListenerQueue<L>[] next = Arrays.copyOf(queues, queues.length - 1);
+        System.arraycopy(queues, i + 1, next, i, queues.length - i - 1);
+        return next;
+    }
+}
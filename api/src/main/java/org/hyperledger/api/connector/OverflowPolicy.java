@@ -0,0 +1,35 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+/**
+ * What a listener queue does with an event if the listener fell so far behind that its queue is full
+ */
+public enum OverflowPolicy {
+    /**
+     * Wait until the listener took an event, this slows down delivery to all listeners of the stream
+     */
+    BLOCK,
+    /**
+     * Discard the oldest event queued
+     */
+    DROP_OLDEST,
+    /**
+     * Unsubscribe the listener, events queued are discarded
+     */
+    DISCONNECT
+}
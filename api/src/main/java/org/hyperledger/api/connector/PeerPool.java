@@ -0,0 +1,362 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import io.grpc.Channel;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import protos.Fabric;
+import protos.OpenchainGrpc;
+import protos.OpenchainGrpc.OpenchainFutureStub;
+import protos.PeerGrpc;
+import protos.PeerGrpc.PeerFutureStub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.hyperledger.api.connector.CompletableFutures.fromListenable;
+
+/**
+ * A set of peers the connector spreads its calls across.
+ * <p>
+ * A call goes to the better of two randomly chosen peers, where better means lower exponentially weighted
+ * moving average latency multiplied by the number of calls already in flight to the peer. A peer without a
+ * successful call yet is assumed to have the mean latency of the pool. A peer that fails several calls in a row
+ * is ejected from the selection for a while, once readmitted it is ejected again only after as many failures.
+ * If every peer is ejected all of them are considered again.
+ */
+public class PeerPool {
+    private static final Logger log = LoggerFactory.getLogger(PeerPool.class);
+    private static final double EWMA_WEIGHT = 0.3;
+
+    private final List<Peer> peers = new CopyOnWriteArrayList<>();
+    private volatile int maxFailures = 5;
+    private volatile long ejectionNanos = TimeUnit.SECONDS.toNanos(30);
+
+    public PeerPool(List<Peer> peers) {
+        if (peers.isEmpty()) {
+            throw new IllegalArgumentException("At least one peer is needed");
+        }
+        this.peers.addAll(peers);
+    }
+
+    /**
+     * Create a pool of plain text connections
+     *
+     * @param addresses - peer addresses in host:port form
+     * @return a new pool
+     */
+    public static PeerPool forAddresses(List<String> addresses) {
+        List<Peer> peers = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            peers.add(connect(address));
+        }
+        return new PeerPool(peers);
+    }
+
+    /**
+     * Create a pool of a single peer connected through the channel
+     */
+    public static PeerPool forChannel(Channel channel) {
+        return new PeerPool(Collections.singletonList(new Peer(channel.authority(), channel)));
+    }
+
+    private static Peer connect(String address) {
+        return new Peer(address, channel(address));
+    }
+
+    /**
+     * @param address - host:port
+     * @return a plain text channel to the address
+     */
+    static ManagedChannel channel(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Peer address must be host:port " + address);
+        }
+        return NettyChannelBuilder.forAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)))
+                .negotiationType(NegotiationType.PLAINTEXT).build();
+    }
+
+    /**
+     * Add the peers known to the network that are not yet in the pool. Peers are asked through Openchain.GetPeers.
+     *
+     * @return future of the number of peers added
+     */
+    public CompletableFuture<Integer> discover() {
+        return call(peer -> fromListenable(peer.openchain().getPeers(com.google.protobuf.Empty.getDefaultInstance())))
+                .thenApply(this::addPeers);
+    }
+
+    private synchronized int addPeers(Fabric.PeersMessage message) {
+        int added = 0;
+        for (Fabric.PeerEndpoint endpoint : message.getPeersList()) {
+            String address = endpoint.getAddress();
+            if (address.isEmpty() || peers.stream().anyMatch(p -> p.getAddress().equals(address))) {
+                continue;
+            }
+            log.info("Discovered peer {} at {}", endpoint.getID().getName(), address);
+            peers.add(connect(address));
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * @param maxFailures - number of consecutive failed calls that eject a peer
+     */
+    public void setMaxFailures(int maxFailures) {
+        this.maxFailures = maxFailures;
+    }
+
+    /**
+     * @param time - time an ejected peer is not selected
+     * @param unit - unit of time
+     */
+    public void setEjectionTime(long time, TimeUnit unit) {
+        this.ejectionNanos = unit.toNanos(time);
+    }
+
+    /**
+     * @return peers of the pool
+     */
+    public List<Peer> getPeers() {
+        return Collections.unmodifiableList(peers);
+    }
+
+    /**
+     * Select a peer for the next call
+     */
+    public Peer select() {
+        return select(null);
+    }
+
+    /**
+     * Select a peer for the next call, other than the one given if possible
+     *
+     * @param exclude - a peer not to select or null
+     */
+    public Peer select(Peer exclude) {
+        long now = System.nanoTime();
+        List<Peer> candidates = new ArrayList<>(peers.size());
+        for (Peer peer : peers) {
+            if (peer != exclude && !peer.isEjected(now)) {
+                candidates.add(peer);
+            }
+        }
+        if (candidates.isEmpty()) {
+            for (Peer peer : peers) {
+                if (peer != exclude) {
+                    candidates.add(peer);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return exclude;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(candidates.size());
+        int j = random.nextInt(candidates.size() - 1);
+        if (j >= i) {
+            j++;
+        }
+        Peer a = candidates.get(i);
+        Peer b = candidates.get(j);
+        double meanLatency = meanLatencyNanos();
+        return a.score(meanLatency) <= b.score(meanLatency) ? a : b;
+    }
+
+    // of the peers with a successful call, 0 if there is none
+    private double meanLatencyNanos() {
+        double sum = 0;
+        int known = 0;
+        for (Peer peer : peers) {
+            double latency = peer.latencyNanos;
+            if (latency > 0) {
+                sum += latency;
+                known++;
+            }
+        }
+        return known == 0 ? 0 : sum / known;
+    }
+
+    /**
+     * Run a call on a selected peer, recording its latency and outcome for the peer
+     *
+     * @param rpc - the call
+     * @return future of the call's result
+     */
+    public <T> CompletableFuture<T> call(Function<Peer, CompletableFuture<T>> rpc) {
+        return call(select(), rpc);
+    }
+
+    /**
+     * Run a call on the given peer, recording its latency and outcome for the peer
+     */
+    public <T> CompletableFuture<T> call(Peer peer, Function<Peer, CompletableFuture<T>> rpc) {
+        long start = System.nanoTime();
+        peer.inFlight.incrementAndGet();
+        CompletableFuture<T> future;
+        try {
+            future = rpc.apply(peer);
+        } catch (RuntimeException e) {
+            future = CompletableFutures.failed(e);
+        }
+        future.whenComplete((result, error) -> {
+            peer.inFlight.decrementAndGet();
+            if (error != null && isPeerFailure(CompletableFutures.unwrap(error))) {
+                peer.failed(maxFailures, ejectionNanos);
+            } else {
+                peer.succeeded(System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return true if the call failed for the peer or the connection to it, rather than with the peer's answer
+     */
+    static boolean isPeerFailure(Throwable t) {
+        if (t instanceof StatusRuntimeException) {
+            Status.Code code = ((StatusRuntimeException) t).getStatus().getCode();
+            return code == Status.Code.UNAVAILABLE || code == Status.Code.DEADLINE_EXCEEDED ||
+                    code == Status.Code.RESOURCE_EXHAUSTED || code == Status.Code.INTERNAL;
+        }
+        return t instanceof IllegalStateException;
+    }
+
+    /**
+     * Close connections the pool created
+     */
+    public void shutdown() {
+        for (Peer peer : peers) {
+            if (peer.channel instanceof ManagedChannel) {
+                ((ManagedChannel) peer.channel).shutdown();
+            }
+        }
+    }
+
+    /**
+     * A peer of the pool with its stubs and latency statistics
+     */
+    public static class Peer {
+        private final String address;
+        private final Channel channel;
+        private final PeerFutureStub peerStub;
+        private final OpenchainFutureStub openchainStub;
+        private final ChatSubmitter chatSubmitter;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile double latencyNanos;
+        private volatile int failures;
+        private volatile long ejectedUntil;
+        private volatile boolean ejected;
+
+        public Peer(String address, Channel channel) {
+            this.address = address;
+            this.channel = channel;
+            peerStub = PeerGrpc.newFutureStub(channel);
+            openchainStub = OpenchainGrpc.newFutureStub(channel);
+            chatSubmitter = new ChatSubmitter(channel);
+        }
+
+        Channel channel() {
+            return channel;
+        }
+
+        PeerFutureStub peer() {
+            return peerStub;
+        }
+
+        OpenchainFutureStub openchain() {
+            return openchainStub;
+        }
+
+        ChatSubmitter chat() {
+            return chatSubmitter;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * @return exponentially weighted moving average of successful call latencies in milliseconds
+         */
+        public double getLatencyMillis() {
+            return latencyNanos / 1e6;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public boolean isEjected() {
+            return isEjected(System.nanoTime());
+        }
+
+        private boolean isEjected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+
+        // a latency of 0 is not yet known
+        private double score(double meanLatencyNanos) {
+            double latency = latencyNanos;
+            return (latency == 0 ? meanLatencyNanos : latency) * (inFlight.get() + 1);
+        }
+
+        synchronized void succeeded(long nanos) {
+            failures = 0;
+            ejected = false;
+            latencyNanos = latencyNanos == 0 ? nanos : latencyNanos + EWMA_WEIGHT * (nanos - latencyNanos);
+        }
+
+        synchronized void failed(int maxFailures, long ejectionNanos) {
+            long now = System.nanoTime();
+            if (ejected && !isEjected(now)) {
+                // readmitted, failures before the ejection do not count again
+                ejected = false;
+                failures = 0;
+            }
+            if (++failures >= maxFailures && !ejected) {
+                log.warn("Ejecting peer {} after {} failures", address, failures);
+                ejected = true;
+                ejectedUntil = now + ejectionNanos;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return address;
+        }
+    }
+}
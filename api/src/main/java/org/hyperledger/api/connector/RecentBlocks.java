@@ -0,0 +1,107 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.api.HLAPITransaction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The most recent blocks observed, bounded by number and by approximate size in bytes
+ */
+final class RecentBlocks {
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final class Entry {
+        final HLAPIBlock block;
+        final long weight;
+
+        Entry(HLAPIBlock block, long weight) {
+            this.block = block;
+            this.weight = weight;
+        }
+    }
+
+    // guarded by this
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private int maxBlocks;
+    private long maxBytes;
+    private long bytes;
+
+    RecentBlocks(int maxBlocks, long maxBytes) {
+        resize(maxBlocks, maxBytes);
+    }
+
+    /**
+     * @param maxBlocks - maximum number of blocks kept, 0 to keep none
+     * @param maxBytes  - maximum approximate size of the blocks kept
+     */
+    synchronized void resize(int maxBlocks, long maxBytes) {
+        if (maxBlocks < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("Limits must not be negative");
+        }
+        this.maxBlocks = maxBlocks;
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    synchronized void add(HLAPIBlock block) {
+        if (maxBlocks == 0) {
+            return;
+        }
+        long weight = ENTRY_OVERHEAD;
+        for (HLAPITransaction transaction : block.getTransactions()) {
+            weight += LedgerCache.weigh(transaction);
+        }
+        entries.addLast(new Entry(block, weight));
+        bytes += weight;
+        evict();
+    }
+
+    private void evict() {
+        while (entries.size() > maxBlocks || bytes > maxBytes && !entries.isEmpty()) {
+            bytes -= entries.removeFirst().weight;
+        }
+    }
+
+    /**
+     * @return up to n most recent blocks, oldest first
+     */
+    synchronized List<HLAPIBlock> last(int n) {
+        int count = Math.min(n, entries.size());
+        List<HLAPIBlock> blocks = new ArrayList<>(count);
+        Iterator<Entry> newestFirst = entries.descendingIterator();
+        for (int i = 0; i < count; i++) {
+            blocks.add(newestFirst.next().block);
+        }
+        Collections.reverse(blocks);
+        return blocks;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.HLAPITransaction;
+import org.hyperledger.transaction.TID;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers delivered transaction IDs so that a transaction observed again, e.g. in a block re-sent after a reconnect
+ * or on an other event source, is not delivered twice.
+ * The most recent IDs are kept exactly, older ones in two generations of cuckoo filters. A generation is retired
+ * after a window of blocks, or once it is full, so memory is fixed at about 8.4 bytes per transaction of the window
+ * plus the exact set.
+ * A hit of the filters alone drops a transaction only if its block is not above the newest block an ID was evicted
+ * from the exact set at, i.e. older than the range the exact set covers. Transactions of new blocks, and of blocks
+ * with unknown height, are never dropped by a false positive of the filters, about 2 in 10^9, but a block re-sent
+ * from before that range is deduplicated by the filters only.
+ */
+final class TransactionDedup {
+    private final int windowBlocks;
+    private final int windowTransactions;
+    private final Map<TID, Integer> exact; // guarded by this
+    private CuckooFilter current; // guarded by this
+    private CuckooFilter previous; // guarded by this
+    private int windowStart = -1; // guarded by this
+    private int evictedHeight; // guarded by this
+    private long dropped; // guarded by this
+
+    /**
+     * @param windowBlocks       - blocks a generation of the filter covers, 0 to retire generations only when full
+     * @param windowTransactions - transactions a generation of the filter holds
+     * @param exactSize          - number of most recent IDs kept exactly
+     */
+    TransactionDedup(int windowBlocks, int windowTransactions, int exactSize) {
+        if (windowBlocks < 0 || windowTransactions <= 0 || exactSize < 0) {
+            throw new IllegalArgumentException("invalid window");
+        }
+        this.windowBlocks = windowBlocks;
+        this.windowTransactions = windowTransactions;
+        exact = new LinkedHashMap<TID, Integer>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TID, Integer> eldest) {
+                if (size() > exactSize) {
+                    evictedHeight = Math.max(evictedHeight, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        current = new CuckooFilter(windowTransactions);
+    }
+
+    static long hash(TID id) {
+        byte[] bytes = id.unsafeGetArray();
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash |= (bytes[i] & 0xffL) << (8 * i);
+        }
+        return hash;
+    }
+
+    /**
+     * Record the transaction as delivered
+     *
+     * @param height - height of the block of the transaction, 0 if unknown
+     * @return false if it was delivered before
+     */
+    synchronized boolean firstDelivery(TID id, int height) {
+        if (exact.containsKey(id)) {
+            dropped++;
+            return false;
+        }
+        long hash = hash(id);
+        if (height > 0 && height <= evictedHeight
+                && (current.mightContain(hash) || previous != null && previous.mightContain(hash))) {
+            dropped++;
+            return false;
+        }
+        if (windowBlocks > 0 && height > 0) {
+            if (windowStart < 0) {
+                windowStart = height;
+            } else if (height >= windowStart + windowBlocks) {
+                rotate();
+                windowStart = height;
+            }
+        }
+        if (current.size() >= windowTransactions || !current.add(hash)) {
+            rotate();
+            current.add(hash);
+        }
+        exact.put(id, height);
+        return true;
+    }
+
+    private void rotate() {
+        previous = current;
+        current = new CuckooFilter(windowTransactions);
+    }
+
+    /**
+     * @return transactions not delivered before, in their order
+     */
+    List<HLAPITransaction> filter(List<HLAPITransaction> transactions, int height) {
+        List<HLAPITransaction> first = new ArrayList<>(transactions.size());
+        synchronized (this) {
+            for (HLAPITransaction tx : transactions) {
+                if (firstDelivery(tx.getID(), height)) {
+                    first.add(tx);
+                }
+            }
+        }
+        return first.size() == transactions.size() ? transactions : first;
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+}
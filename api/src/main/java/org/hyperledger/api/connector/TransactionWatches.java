@@ -0,0 +1,122 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.HLAPITransaction;
+import org.hyperledger.api.TransactionListener;
+import org.hyperledger.transaction.TID;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Transactions watched by listeners, indexed by ID so that matching a block costs one lookup per transaction
+ * independent of the number of watches. A watch is removed once its transaction was matched.
+ */
+final class TransactionWatches {
+    private static final class Watcher {
+        final ListenerQueue<TransactionListener> queue;
+        int pending;
+
+        Watcher(ListenerQueue<TransactionListener> queue) {
+            this.queue = queue;
+        }
+    }
+
+    // guarded by this
+    private final Map<TID, List<Watcher>> watched = new HashMap<>();
+    private final Map<TransactionListener, Watcher> watchers = new HashMap<>();
+
+    /**
+     * @param queue - creates the queue the listener's transactions are delivered through, if it has none yet
+     */
+    synchronized void watch(Collection<TID> ids, TransactionListener l,
+                            Function<TransactionListener, ListenerQueue<TransactionListener>> queue) {
+        Watcher watcher = watchers.computeIfAbsent(l, k -> new Watcher(queue.apply(k)));
+        for (TID id : ids) {
+            List<Watcher> w = watched.computeIfAbsent(id, k -> new ArrayList<>(1));
+            if (!w.contains(watcher)) {
+                w.add(watcher);
+                watcher.pending++;
+            }
+        }
+    }
+
+    synchronized void unwatch(Collection<TID> ids, TransactionListener l) {
+        Watcher watcher = watchers.get(l);
+        if (watcher == null) {
+            return;
+        }
+        for (TID id : ids) {
+            List<Watcher> w = watched.get(id);
+            if (w != null && w.remove(watcher)) {
+                if (w.isEmpty()) {
+                    watched.remove(id);
+                }
+                release(watcher);
+            }
+        }
+    }
+
+    // the queue is dropped but not disconnected, so transactions already offered are still delivered
+    private void release(Watcher watcher) {
+        if (--watcher.pending == 0) {
+            watchers.remove(watcher.queue.getListener());
+        }
+    }
+
+    /**
+     * Remove the watches of the transactions
+     *
+     * @return the watched transactions by the queue of the listener watching them
+     */
+    synchronized Map<ListenerQueue<TransactionListener>, List<HLAPITransaction>> take(List<HLAPITransaction> transactions) {
+        if (watched.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<ListenerQueue<TransactionListener>, List<HLAPITransaction>> matched = new LinkedHashMap<>();
+        for (HLAPITransaction tx : transactions) {
+            List<Watcher> w = watched.remove(tx.getID());
+            if (w != null) {
+                for (Watcher watcher : w) {
+                    matched.computeIfAbsent(watcher.queue, k -> new ArrayList<>()).add(tx);
+                    release(watcher);
+                }
+            }
+        }
+        return matched;
+    }
+
+    synchronized boolean isEmpty() {
+        return watched.isEmpty();
+    }
+
+    /**
+     * @return number of transactions watched
+     */
+    synchronized int size() {
+        return watched.size();
+    }
+
+    synchronized List<ListenerQueue<TransactionListener>> queues() {
+        List<ListenerQueue<TransactionListener>> queues = new ArrayList<>(watchers.size());
+        for (Watcher watcher : watchers.values()) {
+            queues.add(watcher.queue);
+        }
+        return queues;
+    }
+}
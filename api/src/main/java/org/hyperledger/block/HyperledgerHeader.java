@@ -34,6 +34,19 @@ public class HyperledgerHeader implements Header {
         this.createTime = createTime;
     }
 
+    /**
+     * Create a header with an ID assigned by the server, e.g. a digest of the server's block representation
+     *
+     * @param ID         - ID of the header
+     * @param previousID - ID of the previous header
+     * @param merkleRoot - merkle root of the block's transactions
+     * @param createTime - seconds in the Unix era
+     */
+    public HyperledgerHeader(BID ID, BID previousID, MerkleRoot merkleRoot, int createTime) {
+        this(previousID, merkleRoot, createTime);
+        this.ID = ID;
+    }
+
     public static HyperledgerHeader.Builder create() {
         return new HyperledgerHeader.Builder();
     }
@@ -24,6 +24,8 @@ import org.apache.avro.specific.SpecificRecord;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.function.Function;
@@ -34,12 +36,16 @@ public class AvroSerializer {
 
     public static <T extends SpecificRecord> byte[] serialize(T data) throws IOException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serialize(data, out);
+        out.close();
+        return out.toByteArray();
+    }
+
+    public static <T extends SpecificRecord> void serialize(T data, OutputStream out) throws IOException {
         BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
         DatumWriter<T> writer = new SpecificDatumWriter<>(data.getSchema());
         writer.write(data, encoder);
         encoder.flush();
-        out.close();
-        return out.toByteArray();
     }
 
     public static <T extends SpecificRecord> T deserialize(byte[] data, Schema schema) throws IOException {
@@ -48,6 +54,12 @@ public class AvroSerializer {
         return reader.read(null, decoder);
     }
 
+    public static <T extends SpecificRecord> T deserialize(InputStream data, Schema schema) throws IOException {
+        SpecificDatumReader<T> reader = new SpecificDatumReader<>(schema);
+        Decoder decoder = DecoderFactory.get().binaryDecoder(data, null);
+        return reader.read(null, decoder);
+    }
+
     public static <T> List<ByteBuffer> toByteBufferList(List<T> list, Function<T, byte[]> encoder) {
         return list.stream()
                 .map(item -> ByteBuffer.wrap(encoder.apply(item)))
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.common;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel for large numbers of timeouts that mostly get cancelled.
+ * Scheduling and cancelling are O(1) and no task is created per timeout, expiry is checked once per tick
+ * by a single daemon thread, so timeouts fire up to one tick late.
+ * Tasks run on that thread and should be short, e.g. complete a future.
+ */
+public class TimingWheel {
+    private static final Logger log = LoggerFactory.getLogger(TimingWheel.class);
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final long startTime = System.nanoTime();
+    private volatile boolean stopped;
+
+    /**
+     * @param tickDuration  - resolution of the timeouts
+     * @param unit          - unit of the tick duration
+     * @param ticksPerWheel - number of buckets, rounded up to a power of two
+     */
+    public TimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("Tick duration and ticks per wheel must be positive");
+        }
+        tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+        wheel = new Bucket[Math.max(size, 1)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = wheel.length - 1;
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("hlapi-timing-wheel-" + instances.incrementAndGet())
+                .build();
+        worker = threadFactory.newThread(this::run);
+    }
+
+    /**
+     * Run the task once the delay elapsed, unless the returned timeout is cancelled before
+     *
+     * @param task  - the task to run on the wheel's thread
+     * @param delay - delay from now
+     * @param unit  - unit of the delay
+     * @return handle to cancel the timeout
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("Timing wheel is stopped");
+        }
+        if (started.compareAndSet(false, true)) {
+            worker.start();
+        }
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(delay));
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stop the wheel, timeouts pending are not run
+     */
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (!stopped) {
+            long deadline = tickNanos * (tick + 1);
+            long sleep = deadline - (System.nanoTime() - startTime);
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+            }
+            transferAdded(tick);
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    private void transferAdded(long tick) {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            long due = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.rounds = (due - tick) / wheel.length;
+            wheel[(int) (due & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Timeouts of one tick in all rounds, only accessed by the worker thread
+     */
+    private static class Bucket {
+        private Timeout head;
+
+        void add(Timeout timeout) {
+            timeout.next = head;
+            if (head != null) {
+                head.previous = timeout;
+            }
+            head = timeout;
+        }
+
+        void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.state.get() == Timeout.CANCELLED) {
+                    remove(timeout);
+                } else if (timeout.rounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.next = null;
+            timeout.previous = null;
+        }
+    }
+
+    public static class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long rounds;
+        private Timeout next;
+        private Timeout previous;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if cancelled, false if the task already ran or the timeout was cancelled before
+         */
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (state.compareAndSet(PENDING, EXPIRED)) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Timeout task failed", e);
+                }
+            }
+        }
+    }
+}
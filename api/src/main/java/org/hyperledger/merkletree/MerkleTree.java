@@ -19,6 +19,10 @@ import org.hyperledger.common.Hash;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
 
 /**
  * Merkle Tree is a digest of information organized such that inclusion of a piece can be proven
@@ -42,6 +46,39 @@ public class MerkleTree {
         return new MerkleRoot(rootNode.getID());
     }
 
+    /**
+     * Digest a list of nodes into a single root digest, compressing chunks of the list in parallel.
+     * Chunks are aligned to a power of two, so every complete chunk compresses to a single node
+     * and the chunk nodes compress to the same root as the whole list.
+     *
+     * @param nodes     list of nodes to compress
+     * @param pool      pool to compress the chunks on
+     * @param chunkSize number of nodes compressed by one task, rounded down to a power of two
+     * @return root digest
+     */
+    public static MerkleRoot computeMerkleRoot(List<? extends MerkleTreeNode> nodes, ForkJoinPool pool, int chunkSize) {
+        int chunk = Integer.highestOneBit(Math.max(chunkSize, 2));
+        if (nodes.size() <= chunk) {
+            return computeMerkleRoot(nodes);
+        }
+        int chunks = (nodes.size() + chunk - 1) / chunk;
+        List<List<MerkleTreeNode>> compressed = pool.submit(() -> IntStream.range(0, chunks).parallel()
+                .mapToObj(i -> {
+                    List<? extends MerkleTreeNode> part = nodes.subList(i * chunk, Math.min(nodes.size(), (i + 1) * chunk));
+                    List<MerkleTreeNode> leaves = new ArrayList<>(part.size());
+                    for (MerkleTreeNode n : part) {
+                        leaves.add(new PrunedNode(n.getID(), 0));
+                    }
+                    return compress(leaves);
+                })
+                .collect(toList())).join();
+
+        List<MerkleTreeNode> merkleTreeNodeList = new ArrayList<>();
+        compressed.forEach(merkleTreeNodeList::addAll);
+        MerkleTreeNode rootNode = compress(merkleTreeNodeList).get(0);
+        return new MerkleRoot(rootNode.getID());
+    }
+
     /**
      * Compress a merkle tree into the smallest possible representation that
      * does not lose information on nodes that are not instances of PrunedNode
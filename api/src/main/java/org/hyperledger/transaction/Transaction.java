@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import protos.Chaincode;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.function.Function;
@@ -35,14 +36,16 @@ public class Transaction implements MerkleTreeNode {
     private static final Logger log = LoggerFactory.getLogger(Transaction.class);
 
     private final TID ID;
-    private final List<TID> inputs;
-    private final List<byte[]> outputs;
-    private final List<Endorser> endorsers;
+    private final Content content;
+    private final ByteString encoded;
 
     public Transaction(List<TID> inputs, List<byte[]> outputs, List<Endorser> endorsers) {
-        this.inputs = inputs;
-        this.outputs = outputs;
-        this.endorsers = endorsers;
+        this(new Content(inputs, outputs, endorsers), encode(inputs, outputs, endorsers));
+    }
+
+    private Transaction(Content content, ByteString encoded) {
+        this.content = content;
+        this.encoded = encoded;
 
         this.ID = new TID(Hash.of(fabricInvocationForm()));
     }
@@ -50,17 +53,73 @@ public class Transaction implements MerkleTreeNode {
     private byte[] fabricInvocationForm() {
         Chaincode.ChaincodeInput.Builder chaincodeInput = Chaincode.ChaincodeInput.newBuilder();
         chaincodeInput.addArgs(ByteString.copyFromUtf8(txCreatorChaincodeFunction));
-        chaincodeInput.addArgs(ByteString.copyFrom(toByteArray()));
+        chaincodeInput.addArgs(encoded);
         return chaincodeInput.build().toByteArray();
     }
 
     protected Transaction(Transaction t) {
-        inputs = t.inputs;
-        outputs = t.outputs;
-        endorsers = t.endorsers;
+        content = t.content;
+        encoded = t.encoded;
         ID = t.ID;
     }
 
+    /**
+     * Inputs, outputs and endorsers of a transaction, decoded from the serialized form on first access if the
+     * transaction was created from that.
+     */
+    private static final class Content {
+        private final ByteString encoded;
+        private List<TID> inputs;
+        private List<byte[]> outputs;
+        private List<Endorser> endorsers;
+        private volatile boolean decoded;
+
+        Content(List<TID> inputs, List<byte[]> outputs, List<Endorser> endorsers) {
+            this.encoded = null;
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.endorsers = endorsers;
+            this.decoded = true;
+        }
+
+        Content(ByteString encoded) {
+            this.encoded = encoded;
+        }
+
+        Content get() {
+            if (!decoded) {
+                decode();
+            }
+            return this;
+        }
+
+        private synchronized void decode() {
+            if (decoded) {
+                return;
+            }
+            try {
+                SerializedTransaction t = AvroSerializer.deserialize(encoded.newInput(), SerializedTransaction.getClassSchema());
+                inputs = AvroSerializer.fromByteBufferList(t.getInputs(), TID::new);
+                outputs = AvroSerializer.fromByteBufferList(t.getOutputs(), Function.identity());
+                endorsers = AvroSerializer.fromByteBufferList(t.getEndorsers(), Endorser::new);
+                decoded = true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static ByteString encode(List<TID> inputs, List<byte[]> outputs, List<Endorser> endorsers) {
+        try {
+            ByteString.Output out = ByteString.newOutput();
+            AvroSerializer.serialize(toSerializedTransaction(inputs, outputs, endorsers), out);
+            return out.toByteString();
+        } catch (IOException e) {
+            log.error("Failed to serialize transaction: {}", e.getMessage());
+            return ByteString.EMPTY;
+        }
+    }
+
     /**
      * @return 0 since Transaction is always the leaf of the Merkle Tree
      */
@@ -75,15 +134,15 @@ public class Transaction implements MerkleTreeNode {
     }
 
     public List<TID> getInputs() {
-        return inputs;
+        return content.get().inputs;
     }
 
     public List<byte[]> getOutputs() {
-        return outputs;
+        return content.get().outputs;
     }
 
     public List<Endorser> getEndorsers() {
-        return endorsers;
+        return content.get().endorsers;
     }
 
     /**
@@ -91,7 +150,7 @@ public class Transaction implements MerkleTreeNode {
      * of the provided public key.
      */
     public boolean verify(Endorser endorser, PublicKey key) {
-        byte[] hash = Hash.of(outputs.get(0)).toByteArray();
+        byte[] hash = Hash.of(getOutputs().get(0)).toByteArray();
         return endorser.verify(hash, key);
     }
 
@@ -116,40 +175,65 @@ public class Transaction implements MerkleTreeNode {
     }
 
     public byte[] toByteArray() {
-        try {
-            return toByteArray(inputs, outputs, endorsers);
-        } catch (IOException e) {
-            log.error("Failed to serialize transaction {}: {}", ID, e.getMessage());
-            return new byte[0];
-        }
+        return encoded.toByteArray();
+    }
+
+    /**
+     * The serialized form of the transaction. It is computed once at construction and shared, not copied.
+     *
+     * @return immutable serialized transaction
+     */
+    public ByteString toByteString() {
+        return encoded;
     }
 
     public static byte[] toByteArray(List<TID> inputs, List<byte[]> outputs, List<Endorser> endorsers) throws IOException {
+        return AvroSerializer.serialize(toSerializedTransaction(inputs, outputs, endorsers));
+    }
+
+    private static SerializedTransaction toSerializedTransaction(List<TID> inputs, List<byte[]> outputs, List<Endorser> endorsers) {
         List<ByteBuffer> inputBytes = AvroSerializer.toByteBufferList(inputs, TID::toByteArray);
         List<ByteBuffer> outputBytes = AvroSerializer.toByteBufferList(outputs, Function.identity());
         List<ByteBuffer> endorserBytes = AvroSerializer.toByteBufferList(endorsers, Endorser::getSignature);
 
-        SerializedTransaction t = SerializedTransaction.newBuilder()
+        return SerializedTransaction.newBuilder()
                 .setInputs(inputBytes)
                 .setOutputs(outputBytes)
                 .setEndorsers(endorserBytes)
                 .build();
-
-        return AvroSerializer.serialize(t);
     }
 
+    /**
+     * Deserialize a transaction from the array directly. The array is copied once to keep the serialized form.
+     */
     public static Transaction fromByteArray(byte[] array) throws IOException {
         SerializedTransaction t = AvroSerializer.deserialize(array, SerializedTransaction.getClassSchema());
+        Content content = new Content(AvroSerializer.fromByteBufferList(t.getInputs(), TID::new),
+                AvroSerializer.fromByteBufferList(t.getOutputs(), Function.identity()),
+                AvroSerializer.fromByteBufferList(t.getEndorsers(), Endorser::new));
+        return new Transaction(content, ByteString.copyFrom(array));
+    }
 
-        List<TID> inputs = AvroSerializer.fromByteBufferList(t.getInputs(), TID::new);
-        List<byte[]> outputs = AvroSerializer.fromByteBufferList(t.getOutputs(), Function.identity());
-        List<Endorser> endorsers = AvroSerializer.fromByteBufferList(t.getEndorsers(), Endorser::new);
+    /**
+     * Deserialize a transaction, keeping the serialized form instead of serializing the transaction again
+     */
+    public static Transaction fromByteString(ByteString bytes) throws IOException {
+        Transaction transaction = lazyFromByteString(bytes);
+        try {
+            transaction.content.get();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return transaction;
+    }
 
-        return new TransactionBuilder()
-                .inputs(inputs)
-                .outputs(outputs)
-                .endorsers(endorsers)
-                .build();
+    /**
+     * Create a transaction from its serialized form without decoding it. The ID is available at once,
+     * inputs, outputs and endorsers are decoded on first access.
+     * A malformed transaction fails with UncheckedIOException on that access.
+     */
+    public static Transaction lazyFromByteString(ByteString bytes) {
+        return new Transaction(new Content(bytes), bytes);
     }
 
 }
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveLimiterTest {
+
+    @Test
+    public void growsWhileLatencyStaysLow() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 1, 100);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess(100, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(60, limiter.getLimit());
+    }
+
+    @Test
+    public void shrinksWhenLatencyRises() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(50, 1, 100);
+        assertTrue(limiter.tryAcquire());
+        limiter.onSuccess(100, TimeUnit.MILLISECONDS);
+        int limit = limiter.getLimit();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess(400, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(limit - 10, limiter.getLimit());
+    }
+
+    @Test
+    public void backsOffOnDrops() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(100, 5, 100);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onDropped();
+        }
+        assertEquals(5, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void acquireWaitsForSlot() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1);
+        assertTrue(limiter.acquire(10, TimeUnit.MILLISECONDS));
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.acquire(10, TimeUnit.MILLISECONDS));
+        limiter.onIgnore();
+        assertTrue(limiter.acquire(10, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.api;
+
+import org.hyperledger.block.BID;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hyperledger.transaction.TransactionTest.randomTx;
+import static org.junit.Assert.*;
+
+public class BatchAdapterTest {
+
+    @Test
+    public void forwardsEachTransactionAsBatch() throws HLAPIException {
+        BID block = new BID(new byte[32]);
+        HLAPITransaction tx = new HLAPITransaction(randomTx(), block);
+        List<List<HLAPITransaction>> batches = new ArrayList<>();
+        List<BID> blocks = new ArrayList<>();
+        BatchTransactionListener listener = (transactions, blockID, height) -> {
+            batches.add(transactions);
+            blocks.add(blockID);
+            assertEquals(0, height);
+        };
+        new BatchAdapter(listener).process(tx);
+        assertEquals(Collections.singletonList(Collections.singletonList(tx)), batches);
+        assertEquals(Collections.singletonList(block), blocks);
+
+        assertEquals(new BatchAdapter(listener), new BatchAdapter(listener));
+        assertEquals(new BatchAdapter(listener).hashCode(), new BatchAdapter(listener).hashCode());
+        assertNotEquals(new BatchAdapter(listener), new BatchAdapter((transactions, blockID, height) -> {
+        }));
+    }
+}
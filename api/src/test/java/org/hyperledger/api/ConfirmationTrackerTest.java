@@ -0,0 +1,138 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api;
+
+import org.hyperledger.api.connector.DummyFabric;
+import org.hyperledger.common.Hash;
+import org.hyperledger.common.TimingWheel;
+import org.hyperledger.transaction.TID;
+import org.hyperledger.transaction.Transaction;
+import org.hyperledger.transaction.TransactionTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class ConfirmationTrackerTest {
+    private DummyFabric fabric;
+    private ConfirmationTracker tracker;
+
+    @Before
+    public void setUp() throws HLAPIException {
+        fabric = new DummyFabric();
+        tracker = new ConfirmationTracker(fabric, new TimingWheel(10, TimeUnit.MILLISECONDS, 64));
+    }
+
+    @Test
+    public void confirmsIncludedTransaction() throws Exception {
+        Transaction tx = TransactionTest.randomTx();
+        HLAPITransaction confirmed = tracker.sendTransactionAndAwait(tx, 10, TimeUnit.SECONDS).get();
+
+        assertEquals(tx.getID(), confirmed.getID());
+        assertEquals(0, tracker.getPending());
+    }
+
+    @Test
+    public void confirmsAtDepth() throws Exception {
+        Transaction tx = TransactionTest.randomTx();
+        CompletableFuture<HLAPITransaction> confirmation = tracker.sendTransactionAndAwait(tx, 3, 10, TimeUnit.SECONDS);
+        fabric.sendTransaction(TransactionTest.randomTx());
+        assertFalse(confirmation.isDone());
+
+        fabric.sendTransaction(TransactionTest.randomTx());
+        assertEquals(tx.getID(), confirmation.get().getID());
+    }
+
+    @Test
+    public void rejectionFailsConfirmation() throws Exception {
+        Transaction invalid = new Transaction(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()) {
+            @Override
+            public byte[] toByteArray() {
+                return new byte[0];
+            }
+        };
+        try {
+            tracker.sendTransactionAndAwait(invalid, 10, TimeUnit.SECONDS).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HLAPIException);
+        }
+        assertEquals(0, tracker.getPending());
+    }
+
+    @Test
+    public void timesOut() throws Exception {
+        CompletableFuture<HLAPITransaction> confirmation = tracker.awaitConfirmation(new TID(Hash.of(new byte[]{1})), 50, TimeUnit.MILLISECONDS);
+        try {
+            confirmation.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(0, tracker.getPending());
+    }
+
+    @Test
+    public void queuesTransactionsNotAdmitted() throws Exception {
+        List<Runnable> sends = new ArrayList<>();
+        tracker.setExecutor(sends::add);
+        tracker.setLimiter(new AdaptiveLimiter(1, 1, 1));
+        Transaction first = TransactionTest.randomTx();
+        Transaction second = TransactionTest.randomTx();
+        CompletableFuture<HLAPITransaction> firstConfirmation = tracker.sendTransactionAndAwait(first, 2, 10, TimeUnit.SECONDS);
+        CompletableFuture<HLAPITransaction> secondConfirmation = tracker.sendTransactionAndAwait(second, 2, 10, TimeUnit.SECONDS);
+        assertEquals(1, tracker.getWaiting());
+        assertNull(fabric.getTransaction(second.getID()));
+
+        // confirming the first releases its slot, the second is admitted and sent on the executor,
+        // not by the listener confirming the first
+        fabric.sendTransaction(TransactionTest.randomTx());
+        assertEquals(first.getID(), firstConfirmation.get().getID());
+        assertEquals(0, tracker.getWaiting());
+        assertNull(fabric.getTransaction(second.getID()));
+        assertEquals(1, sends.size());
+        sends.get(0).run();
+        assertNotNull(fabric.getTransaction(second.getID()));
+        assertFalse(secondConfirmation.isDone());
+
+        fabric.sendTransaction(TransactionTest.randomTx());
+        assertEquals(second.getID(), secondConfirmation.get().getID());
+    }
+
+    @Test
+    public void failsTransactionNotAdmittedInTime() throws Exception {
+        tracker.setLimiter(new AdaptiveLimiter(1, 1, 1));
+        tracker.sendTransactionAndAwait(TransactionTest.randomTx(), 2, 10, TimeUnit.SECONDS);
+        Transaction waiting = TransactionTest.randomTx();
+        CompletableFuture<HLAPITransaction> confirmation = tracker.sendTransactionAndAwait(waiting, 50, TimeUnit.MILLISECONDS);
+        try {
+            confirmation.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(0, tracker.getWaiting());
+        assertNull(fabric.getTransaction(waiting.getID()));
+    }
+}
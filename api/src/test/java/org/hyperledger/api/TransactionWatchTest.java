@@ -0,0 +1,70 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hyperledger.api;
+
+import org.hyperledger.block.BID;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hyperledger.transaction.TransactionTest.randomTx;
+import static org.junit.Assert.*;
+
+public class TransactionWatchTest {
+
+    private static HLAPITransaction randomHLTx() {
+        return new HLAPITransaction(randomTx(), BID.INVALID);
+    }
+
+    @Test
+    public void forwardsWatchedTransactionsOnceThenRemovesItself() throws HLAPIException {
+        HLAPITransaction a = randomHLTx();
+        HLAPITransaction b = randomHLTx();
+        List<HLAPITransaction> forwarded = new ArrayList<>();
+        List<TransactionListener> removed = new ArrayList<>();
+        TransactionWatch watch = new TransactionWatch(Arrays.asList(a.getID(), b.getID()), forwarded::add, removed::add);
+
+        watch.process(randomHLTx());
+        watch.process(a);
+        watch.process(a);
+        assertEquals(Arrays.asList(a), forwarded);
+        assertTrue(removed.isEmpty());
+        watch.process(b);
+        assertEquals(Arrays.asList(a, b), forwarded);
+        assertEquals(Arrays.<TransactionListener>asList(watch), removed);
+    }
+
+    @Test
+    public void equalForSameIDsAndListener() {
+        HLAPITransaction a = randomHLTx();
+        HLAPITransaction b = randomHLTx();
+        TransactionListener listener = t -> {
+        };
+        TransactionWatch watch = new TransactionWatch(Arrays.asList(a.getID(), b.getID()), listener, l -> {
+        });
+        assertEquals(watch, new TransactionWatch(Arrays.asList(b.getID(), a.getID()), listener, l -> {
+        }));
+        assertEquals(watch.hashCode(), new TransactionWatch(Arrays.asList(b.getID(), a.getID()), listener, l -> {
+        }).hashCode());
+        assertNotEquals(watch, new TransactionWatch(Arrays.asList(a.getID()), listener, l -> {
+        }));
+        assertNotEquals(watch, new TransactionWatch(Arrays.asList(a.getID(), b.getID()), t -> {
+        }, l -> {
+        }));
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import com.google.protobuf.Empty;
+import io.grpc.Status;
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.block.BID;
+import org.junit.Before;
+import org.junit.Test;
+import protos.Fabric;
+import protos.OpenchainGrpc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockDownloaderTest {
+    private static final int LENGTH = 100;
+
+    private final List<Fabric.Block> chain = FabricBlocks.chain(LENGTH);
+    private final FakeChannel channel = new FakeChannel("peer:7051");
+    private final BlockIndex index = new BlockIndex();
+    private final BlockDownloader downloader = new BlockDownloader(PeerPool.forChannel(channel), 4, index);
+    private final List<HLAPIBlock> delivered = new ArrayList<>();
+
+    @Before
+    public void serveChain() {
+        channel.answer(OpenchainGrpc.METHOD_GET_BLOCKCHAIN_INFO, request -> Fabric.BlockchainInfo.newBuilder()
+                .setHeight(LENGTH)
+                .build());
+        channel.answer(OpenchainGrpc.METHOD_GET_BLOCK_BY_NUMBER, request -> {
+            if (request.getNumber() >= LENGTH) {
+                throw Status.NOT_FOUND.asRuntimeException();
+            }
+            return chain.get((int) request.getNumber());
+        });
+    }
+
+    private BID id(int height) {
+        return FabricConverter.blockID(chain.get(height));
+    }
+
+    private List<BID> inventory(int from, int to) {
+        List<BID> inventory = new ArrayList<>();
+        for (int height = to; height >= from; height--) {
+            inventory.add(id(height));
+        }
+        return inventory;
+    }
+
+    private int fetched() {
+        return channel.calls(OpenchainGrpc.METHOD_GET_BLOCK_BY_NUMBER).size();
+    }
+
+    private void assertDelivered(int from, int to) {
+        assertEquals(to - from + 1, delivered.size());
+        for (int i = 0; i < delivered.size(); i++) {
+            HLAPIBlock block = delivered.get(i);
+            assertEquals(from + i, block.getHeight());
+            assertEquals(id(from + i), block.getID());
+            assertEquals(i == 0 ? (from == 0 ? BID.INVALID : id(from - 1)) : id(from + i - 1), block.getPreviousID());
+        }
+    }
+
+    @Test
+    public void locatesIndexedInventoryWithSingleFetch() {
+        index.put(id(90), 90);
+        index.put(id(85), 85);
+        downloader.catchUp(inventory(80, 90), 0, false, delivered::addAll).join();
+        assertDelivered(91, 99);
+        assertEquals(1 + 9, fetched());
+    }
+
+    @Test
+    public void verifiesIndexedHeight() {
+        index.put(id(80), 50);
+        downloader.catchUp(inventory(60, 80), 0, false, delivered::addAll).join();
+        assertDelivered(81, 99);
+        assertEquals(80, index.get(id(80)));
+    }
+
+    @Test
+    public void probesUnindexedInventory() {
+        downloader.catchUp(inventory(30, 40), 0, true, delivered::addAll).join();
+        assertDelivered(41, 99);
+        // probes at 99, 98, 96, 92 then 84, 68, 36, 0, and a scan of 67 down to 40 in windows of 4,
+        // fewer than the 60 blocks of a linear scan from the tip
+        assertEquals(8 + 28 + 59, fetched());
+        assertTrue(delivered.get(0).getTransactions().isEmpty());
+    }
+
+    @Test
+    public void deliversFromGenesisWithoutInventory() {
+        downloader.catchUp(new ArrayList<>(), 10, false, delivered::addAll).join();
+        assertDelivered(0, 9);
+        assertEquals(1, delivered.get(0).getTransactions().size());
+    }
+
+    @Test
+    public void deliversFromGenesisIfInventoryUnknown() {
+        List<BID> unknown = new ArrayList<>();
+        unknown.add(FabricConverter.blockID(FabricBlocks.block(LENGTH + 1)));
+        downloader.catchUp(unknown, 5, false, delivered::addAll).join();
+        assertDelivered(0, 4);
+    }
+
+    @Test
+    public void indexesTrunk() {
+        downloader.indexTrunk().join();
+        assertEquals(LENGTH, index.getIndexedFromGenesis());
+        for (int height = 0; height < LENGTH; height++) {
+            assertEquals(height, index.get(id(height)));
+        }
+        assertEquals(LENGTH, fetched());
+    }
+
+    @Test
+    public void retriesFailedFetch() {
+        int[] failures = {2};
+        channel.answer(OpenchainGrpc.METHOD_GET_BLOCK_BY_NUMBER, request -> {
+            if (request.getNumber() == 3 && failures[0]-- > 0) {
+                throw Status.UNAVAILABLE.asRuntimeException();
+            }
+            return chain.get((int) request.getNumber());
+        });
+        downloader.catchUp(new ArrayList<>(), 5, false, delivered::addAll).join();
+        assertDelivered(0, 4);
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.block.BID;
+import org.hyperledger.common.Hash;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BlockIndexTest {
+
+    private static BID blockID(int i) {
+        return new BID(Hash.of(Integer.toString(i).getBytes()));
+    }
+
+    @Test
+    public void findsHeightsBeyondInitialCapacity() {
+        BlockIndex index = new BlockIndex();
+        for (int i = 0; i < 10000; i++) {
+            index.put(blockID(i), i);
+        }
+        assertEquals(10000, index.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, index.get(blockID(i)));
+        }
+        assertEquals(-1, index.get(blockID(10000)));
+    }
+
+    @Test
+    public void removeKeepsOtherEntriesReachable() {
+        BlockIndex index = new BlockIndex();
+        List<BID> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ids.add(blockID(i));
+            index.put(ids.get(i), i);
+        }
+        for (int i = 0; i < 500; i += 2) {
+            index.remove(ids.get(i));
+        }
+        assertEquals(250, index.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i % 2 == 0 ? -1 : i, index.get(ids.get(i)));
+        }
+    }
+
+    @Test
+    public void scannedExtendsOnlyContiguousRange() {
+        BlockIndex index = new BlockIndex();
+        index.scanned(10, 20);
+        assertEquals(0, index.getIndexedFromGenesis());
+        index.scanned(0, 10);
+        index.scanned(10, 20);
+        assertEquals(20, index.getIndexedFromGenesis());
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import io.grpc.*;
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.transaction.TransactionTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import protos.EventsOuterClass.Event;
+import protos.Fabric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockPublisherTest {
+    private final List<Event> sent = new ArrayList<>();
+    private final List<HLAPIBlock> received = new ArrayList<>();
+    private ClientCall.Listener<Event> listener;
+    private int requested;
+    private boolean cancelled;
+    private Subscription subscription;
+    private Throwable error;
+    private boolean completed;
+
+    private final Channel channel = new Channel() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <Q, R> ClientCall<Q, R> newCall(MethodDescriptor<Q, R> method, CallOptions options) {
+            return (ClientCall<Q, R>) new ClientCall<Event, Event>() {
+                @Override
+                public void start(Listener<Event> l, Metadata headers) {
+                    listener = l;
+                }
+
+                @Override
+                public void request(int n) {
+                    requested += n;
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+
+                @Override
+                public void halfClose() {
+                }
+
+                @Override
+                public void sendMessage(Event message) {
+                    sent.add(message);
+                }
+            };
+        }
+
+        @Override
+        public String authority() {
+            return "test";
+        }
+    };
+
+    @Before
+    public void subscribe() {
+        new BlockPublisher(channel, () -> new GRPCObserver.ChainTip(10, null)).subscribe(new Subscriber<HLAPIBlock>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription = s;
+            }
+
+            @Override
+            public void onNext(HLAPIBlock block) {
+                received.add(block);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                error = t;
+            }
+
+            @Override
+            public void onComplete() {
+                completed = true;
+            }
+        });
+    }
+
+    // the merkle root of a block is computed over at least one transaction
+    private static Event blockEvent(int version) {
+        return Event.newBuilder()
+                .setBlock(Fabric.Block.newBuilder()
+                        .setVersion(version)
+                        .addTransactions(FabricBlocks.invoke(TransactionTest.randomTx())))
+                .build();
+    }
+
+    @Test
+    public void requestsOnlyWhatSubscriberDemands() {
+        assertEquals(1, sent.size());
+        assertEquals(Event.EventCase.REGISTER, sent.get(0).getEventCase());
+        assertEquals(0, requested);
+
+        subscription.request(2);
+        assertEquals(2, requested);
+        listener.onMessage(blockEvent(1));
+        listener.onMessage(blockEvent(2));
+        assertEquals(2, received.size());
+        assertEquals(10, received.get(0).getHeight());
+        assertEquals(11, received.get(1).getHeight());
+        assertEquals(received.get(0).getID(), received.get(1).getPreviousID());
+        assertEquals(2, requested);
+    }
+
+    @Test
+    public void outstandingRequestsAreBounded() {
+        subscription.request(Long.MAX_VALUE);
+        int window = requested;
+        assertTrue(window > 0 && window < 1000);
+        listener.onMessage(blockEvent(1));
+        assertEquals(window + 1, requested);
+    }
+
+    @Test
+    public void nonPositiveRequestFailsOnClose() {
+        subscription.request(1);
+        subscription.request(0);
+        assertTrue(cancelled);
+        // signalled by the call's callbacks, serial with onNext
+        assertNull(error);
+        listener.onMessage(blockEvent(1));
+        assertTrue(received.isEmpty());
+        listener.onClose(Status.CANCELLED, new Metadata());
+        assertTrue(error instanceof IllegalArgumentException);
+        assertFalse(completed);
+    }
+
+    @Test
+    public void nonPositiveRequestInOnSubscribeFailsAfterIt() {
+        List<String> signals = new ArrayList<>();
+        new BlockPublisher(channel, () -> GRPCObserver.ChainTip.UNKNOWN).subscribe(new Subscriber<HLAPIBlock>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(-1);
+                signals.add("subscribed");
+            }
+
+            @Override
+            public void onNext(HLAPIBlock block) {
+                signals.add("next");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                assertTrue(t instanceof IllegalArgumentException);
+                signals.add("error");
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add("complete");
+            }
+        });
+        assertEquals(Arrays.asList("subscribed", "error"), signals);
+    }
+
+    @Test
+    public void cancelStopsDelivery() {
+        subscription.request(1);
+        subscription.cancel();
+        assertTrue(cancelled);
+        listener.onMessage(blockEvent(1));
+        listener.onClose(Status.CANCELLED, new Metadata());
+        assertTrue(received.isEmpty());
+        assertNull(error);
+        assertFalse(completed);
+    }
+
+    @Test
+    public void closeCompletes() {
+        listener.onClose(Status.OK, new Metadata());
+        assertTrue(completed);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.ChaincodeEventListener;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChaincodeSubscriptionTest {
+    private final ChaincodeEventListener listener = (chaincodeID, txID, eventName, payload) -> {
+    };
+
+    @Test
+    public void emptyNameMatchesAllEventsOfChaincode() {
+        ChaincodeSubscription subscription = new ChaincodeSubscription(listener, "cc", "");
+        assertTrue(subscription.matches("cc", "transfer"));
+        assertTrue(subscription.matches("cc", ""));
+        assertFalse(subscription.matches("other", "transfer"));
+    }
+
+    @Test
+    public void nameMatchesLiterallyOrAsExpression() {
+        assertTrue(new ChaincodeSubscription(listener, "cc", "transfer").matches("cc", "transfer"));
+        assertFalse(new ChaincodeSubscription(listener, "cc", "transfer").matches("cc", "transfers"));
+        assertTrue(new ChaincodeSubscription(listener, "cc", "trans.*").matches("cc", "transfers"));
+        assertTrue(new ChaincodeSubscription(listener, "cc", "a[b").matches("cc", "a[b"));
+        assertFalse(new ChaincodeSubscription(listener, "cc", "a[b").matches("cc", "ab"));
+    }
+
+    @Test
+    public void equalForSameListenerAndInterest() {
+        assertEquals(new ChaincodeSubscription(listener, "cc", "e"), new ChaincodeSubscription(listener, "cc", "e"));
+        assertEquals(new ChaincodeSubscription(listener, "cc", null), new ChaincodeSubscription(listener, "cc", ""));
+        assertNotEquals(new ChaincodeSubscription(listener, "cc", "e"), new ChaincodeSubscription(listener, "cc", "f"));
+    }
+}
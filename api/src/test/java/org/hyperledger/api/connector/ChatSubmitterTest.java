@@ -0,0 +1,150 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import org.hyperledger.transaction.TransactionTest;
+import org.junit.Test;
+import protos.Fabric;
+import protos.Fabric.Message;
+import protos.PeerGrpc;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.*;
+
+public class ChatSubmitterTest {
+    private final FakeChannel channel = new FakeChannel("peer:7051");
+    private final ChatSubmitter submitter = new ChatSubmitter(channel);
+
+    private static InvokeTransaction transaction() {
+        return new InvokeTransaction(TransactionTest.randomTx());
+    }
+
+    private static Message response(Fabric.Response.StatusCode status, String msg) {
+        return Message.newBuilder()
+                .setType(Message.Type.RESPONSE)
+                .setPayload(Fabric.Response.newBuilder()
+                        .setStatus(status)
+                        .setMsg(ByteString.copyFromUtf8(msg))
+                        .build().toByteString())
+                .build();
+    }
+
+    private static Message accepted(InvokeTransaction transaction) {
+        return response(Fabric.Response.StatusCode.SUCCESS, transaction.getTxid());
+    }
+
+    private FakeChannel.FakeCall<Message, Message> stream() {
+        return channel.lastCall(PeerGrpc.METHOD_CHAT);
+    }
+
+    @Test
+    public void opensStreamWithHello() throws Exception {
+        InvokeTransaction transaction = transaction();
+        submitter.submit(transaction);
+        assertEquals(1, channel.calls(PeerGrpc.METHOD_CHAT).size());
+        Message hello = stream().getSent().get(0);
+        assertEquals(Message.Type.DISC_HELLO, hello.getType());
+        Fabric.HelloMessage payload = Fabric.HelloMessage.parseFrom(hello.getPayload());
+        assertEquals(Fabric.PeerEndpoint.Type.NON_VALIDATOR, payload.getPeerEndpoint().getType());
+        assertTrue(payload.getPeerEndpoint().getID().getName().startsWith("hlapi-"));
+
+        Message sent = stream().getSent().get(1);
+        assertEquals(Message.Type.CHAIN_TRANSACTION, sent.getType());
+        assertEquals(transaction.getTxid(), Fabric.Transaction.parseFrom(sent.getPayload()).getTxid());
+    }
+
+    @Test
+    public void matchesResponsesByTxid() {
+        InvokeTransaction a = transaction();
+        InvokeTransaction b = transaction();
+        CompletableFuture<Fabric.Response> first = submitter.submit(a);
+        CompletableFuture<Fabric.Response> second = submitter.submit(b);
+        assertEquals(1, channel.calls(PeerGrpc.METHOD_CHAT).size());
+        assertEquals(3, stream().getSent().size());
+
+        stream().reply(Message.newBuilder().setType(Message.Type.DISC_HELLO).build());
+        assertFalse(first.isDone());
+        stream().reply(accepted(b));
+        assertFalse(first.isDone());
+        assertEquals(b.getTxid(), second.join().getMsg().toStringUtf8());
+        stream().reply(accepted(a));
+        assertEquals(a.getTxid(), first.join().getMsg().toStringUtf8());
+    }
+
+    @Test
+    public void sendsPendingTransactionOnce() {
+        InvokeTransaction transaction = transaction();
+        CompletableFuture<Fabric.Response> first = submitter.submit(transaction);
+        assertSame(first, submitter.submit(transaction));
+        assertEquals(2, stream().getSent().size());
+        stream().reply(accepted(transaction));
+        assertTrue(first.isDone());
+    }
+
+    @Test
+    public void unmatchedResponseFailsStream() {
+        CompletableFuture<Fabric.Response> first = submitter.submit(transaction());
+        CompletableFuture<Fabric.Response> second = submitter.submit(transaction());
+        FakeChannel.FakeCall<Message, Message> failed = stream();
+        failed.reply(response(Fabric.Response.StatusCode.FAILURE, "invalid transaction"));
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertTrue(failed.isCancelled());
+
+        InvokeTransaction transaction = transaction();
+        CompletableFuture<Fabric.Response> third = submitter.submit(transaction);
+        assertNotSame(failed, stream());
+        stream().reply(accepted(transaction));
+        assertEquals(transaction.getTxid(), third.join().getMsg().toStringUtf8());
+    }
+
+    @Test
+    public void streamErrorFailsPendingAndReopens() {
+        CompletableFuture<Fabric.Response> first = submitter.submit(transaction());
+        CompletableFuture<Fabric.Response> second = submitter.submit(transaction());
+        FakeChannel.FakeCall<Message, Message> failed = stream();
+        failed.close(Status.UNAVAILABLE);
+        for (CompletableFuture<Fabric.Response> future : Arrays.asList(first, second)) {
+            try {
+                future.join();
+                fail("pending submission should fail with the stream");
+            } catch (CompletionException e) {
+                assertEquals(Status.Code.UNAVAILABLE, Status.fromThrowable(e.getCause()).getCode());
+            }
+        }
+
+        InvokeTransaction transaction = transaction();
+        CompletableFuture<Fabric.Response> third = submitter.submit(transaction);
+        assertEquals(2, channel.calls(PeerGrpc.METHOD_CHAT).size());
+        assertNotSame(failed, stream());
+        assertEquals(Message.Type.DISC_HELLO, stream().getSent().get(0).getType());
+        stream().reply(accepted(transaction));
+        assertEquals(transaction.getTxid(), third.join().getMsg().toStringUtf8());
+    }
+
+    @Test
+    public void completedStreamFailsPending() {
+        CompletableFuture<Fabric.Response> pending = submitter.submit(transaction());
+        stream().close(Status.OK);
+        assertTrue(pending.isCompletedExceptionally());
+    }
+}
@@ -34,6 +34,8 @@ public class DummyFabric implements HLAPI {
     private Map<TID, BID> index = new HashMap<>();
     private BID top = null;
     private List<TransactionListener> txListeners = new ArrayList<>();
+    private List<BatchTransactionListener> batchTxListeners = new ArrayList<>();
+    private Map<TID, List<TransactionListener>> watches = new HashMap<>();
     private List<TrunkListener> trunkListeners = new ArrayList<>();
     private List<RejectListener> rejectListeners = new ArrayList<>();
 
@@ -104,6 +106,15 @@ public class DummyFabric implements HLAPI {
             for (TransactionListener listener : txListeners) {
                 listener.process(toHLAPITx(transaction));
             }
+
+            for (BatchTransactionListener listener : batchTxListeners) {
+                listener.process(b.getTransactions(), b.getID(), b.getHeight());
+            }
+
+            for (TransactionListener listener : watches.getOrDefault(transaction.getID(), Collections.emptyList())) {
+                listener.process(toHLAPITx(transaction));
+            }
+            watches.remove(transaction.getID());
         }
     }
 
@@ -113,7 +124,11 @@ public class DummyFabric implements HLAPI {
     }
 
     private HLAPIBlock toHLAPIBlock(Block b) {
-        return new HLAPIBlock(toHLAPIHeader(b.getHeader()), b.getTransactions());
+        List<HLAPITransaction> transactions = new ArrayList<>();
+        for (Transaction tx : b.getTransactions()) {
+            transactions.add(new HLAPITransaction(tx, b.getID()));
+        }
+        return new HLAPIBlock(toHLAPIHeader(b.getHeader()), transactions);
     }
 
     private HLAPIHeader toHLAPIHeader(Header h) {
@@ -149,6 +164,33 @@ public class DummyFabric implements HLAPI {
         txListeners.remove(listener);
     }
 
+    @Override
+    public void registerBatchTransactionListener(BatchTransactionListener listener) throws HLAPIException {
+        batchTxListeners.add(listener);
+    }
+
+    @Override
+    public void removeBatchTransactionListener(BatchTransactionListener listener) {
+        batchTxListeners.remove(listener);
+    }
+
+    @Override
+    public void watchTransactions(Collection<TID> ids, TransactionListener listener) throws HLAPIException {
+        for (TID id : ids) {
+            watches.computeIfAbsent(id, k -> new ArrayList<>()).add(listener);
+        }
+    }
+
+    @Override
+    public void unwatchTransactions(Collection<TID> ids, TransactionListener listener) {
+        for (TID id : ids) {
+            List<TransactionListener> listeners = watches.get(id);
+            if (listeners != null && listeners.remove(listener) && listeners.isEmpty()) {
+                watches.remove(id);
+            }
+        }
+    }
+
     @Override
     public void registerTrunkListener(TrunkListener listener) throws HLAPIException {
         trunkListeners.add(listener);
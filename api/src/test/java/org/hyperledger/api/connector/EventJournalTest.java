@@ -0,0 +1,147 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EventJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] block(int height) {
+        byte[] block = new byte[100 + height % 7];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) (height + i);
+        }
+        return block;
+    }
+
+    private static List<Integer> read(EventJournal journal, int from) {
+        List<Integer> heights = new ArrayList<>();
+        journal.read(from, (height, block) -> {
+            assertArrayEquals(block(height), block);
+            heights.add(height);
+        });
+        return heights;
+    }
+
+    private List<Path> segments(Path directory) throws IOException {
+        return Files.list(directory).filter(p -> p.toString().endsWith(".journal")).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void readsAcrossSegmentsAndReopens() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (EventJournal journal = new EventJournal(directory, 1000)) {
+            for (int height = 5; height < 305; height++) {
+                assertTrue(journal.append(height, block(height)));
+            }
+            assertFalse(journal.append(100, block(100)));
+            assertEquals(304, journal.getLastHeight());
+            assertTrue(segments(directory).size() > 10);
+            assertTrue(read(journal, 0).isEmpty());
+            assertEquals(300, read(journal, 5).size());
+            assertEquals(Integer.valueOf(200), read(journal, 200).get(0));
+            assertEquals(105, read(journal, 200).size());
+        }
+        try (EventJournal journal = new EventJournal(directory, 1000)) {
+            assertEquals(304, journal.getLastHeight());
+            assertEquals(5, read(journal, 300).size());
+            assertTrue(journal.append(305, block(305)));
+        }
+    }
+
+    @Test
+    public void readStopsAtGap() throws IOException {
+        try (EventJournal journal = new EventJournal(folder.getRoot().toPath(), 1000)) {
+            journal.append(1, block(1));
+            journal.append(2, block(2));
+            journal.append(4, block(4));
+            assertEquals(2, journal.read(1, (height, block) -> {
+            }));
+            assertEquals(2, read(journal, 1).size());
+            assertEquals(1, read(journal, 4).size());
+            assertEquals(2, journal.read(3, (height, block) -> fail()));
+        }
+    }
+
+    @Test
+    public void discardsCorruptTail() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (EventJournal journal = new EventJournal(directory, 10_000)) {
+            for (int height = 0; height < 10; height++) {
+                journal.append(height, block(height));
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segments(directory).get(0).toFile(), "rw")) {
+            long position = 0;
+            for (int height = 0; height < 9; height++) {
+                position += 12 + block(height).length;
+            }
+            file.seek(position + 12 + 10);
+            file.write(0x55);
+        }
+        try (EventJournal journal = new EventJournal(directory, 10_000)) {
+            assertEquals(8, journal.getLastHeight());
+            assertEquals(9, read(journal, 0).size());
+            assertTrue(journal.append(9, block(9)));
+            assertEquals(10, read(journal, 0).size());
+        }
+    }
+
+    @Test
+    public void checkpointsSurviveReopen() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (EventJournal journal = new EventJournal(directory)) {
+            assertEquals(-1, journal.getCheckpoint("indexer"));
+            journal.commit("indexer", 41);
+            journal.commit("indexer", 42);
+            journal.commit("archiver", 7);
+        }
+        try (EventJournal journal = new EventJournal(directory)) {
+            assertEquals(42, journal.getCheckpoint("indexer"));
+            assertEquals(7, journal.getCheckpoint("archiver"));
+        }
+    }
+
+    @Test
+    public void deleteBeforeKeepsSegmentsInUse() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (EventJournal journal = new EventJournal(directory, 1000)) {
+            for (int height = 0; height < 100; height++) {
+                journal.append(height, block(height));
+            }
+            int before = segments(directory).size();
+            assertTrue(journal.deleteBefore(50) > 0);
+            assertTrue(segments(directory).size() < before);
+            assertEquals(50, read(journal, 50).size());
+            assertTrue(read(journal, 0).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Timestamp;
+import org.hyperledger.transaction.Transaction;
+import org.hyperledger.transaction.TransactionTest;
+import protos.Fabric;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Blocks and transactions in the form the fabric sends them
+ */
+final class FabricBlocks {
+    private FabricBlocks() {
+    }
+
+    /**
+     * @return the invocation of the transaction creator chaincode carrying the transaction
+     */
+    static Fabric.Transaction invoke(Transaction transaction) {
+        try {
+            return Fabric.Transaction.parseFrom(new InvokeTransaction(transaction).toByteString());
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return a block with the transactions, the number makes its ID unique
+     */
+    static Fabric.Block block(long number, Transaction... transactions) {
+        Fabric.Block.Builder block = Fabric.Block.newBuilder()
+                .setTimestamp(Timestamp.newBuilder().setSeconds(1460000000L + number))
+                .setStateHash(ByteString.copyFrom(ByteBuffer.allocate(8).putLong(0, number)));
+        for (Transaction transaction : transactions) {
+            block.addTransactions(invoke(transaction));
+        }
+        return block.build();
+    }
+
+    /**
+     * @return blocks 0..length-1 with a random transaction each
+     */
+    static List<Fabric.Block> chain(int length) {
+        List<Fabric.Block> chain = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            chain.add(block(i, TransactionTest.randomTx()));
+        }
+        return chain;
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import io.grpc.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A channel whose calls are answered by the test. Every call started is recorded with the messages sent on it.
+ */
+public class FakeChannel extends Channel {
+    private final String authority;
+    private final List<FakeCall<?, ?>> calls = new ArrayList<>();
+    private final Map<MethodDescriptor<?, ?>, Function<?, ?>> answers = new ConcurrentHashMap<>();
+
+    public FakeChannel(String authority) {
+        this.authority = authority;
+    }
+
+    /**
+     * Answer unary calls of the method started later as soon as their request is sent.
+     * The answer fails the call if it throws a StatusRuntimeException.
+     */
+    public <Q, R> void answer(MethodDescriptor<Q, R> method, Function<Q, R> answer) {
+        answers.put(method, answer);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <Q, R> ClientCall<Q, R> newCall(MethodDescriptor<Q, R> method, CallOptions options) {
+        FakeCall<Q, R> call = new FakeCall<>(method, (Function<Q, R>) answers.get(method));
+        synchronized (calls) {
+            calls.add(call);
+        }
+        return call;
+    }
+
+    @Override
+    public String authority() {
+        return authority;
+    }
+
+    /**
+     * @return calls of the method started so far, in order
+     */
+    @SuppressWarnings("unchecked")
+    public <Q, R> List<FakeCall<Q, R>> calls(MethodDescriptor<Q, R> method) {
+        List<FakeCall<Q, R>> result = new ArrayList<>();
+        synchronized (calls) {
+            for (FakeCall<?, ?> call : calls) {
+                if (call.method == method) {
+                    result.add((FakeCall<Q, R>) call);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the last call of the method started
+     */
+    public <Q, R> FakeCall<Q, R> lastCall(MethodDescriptor<Q, R> method) {
+        List<FakeCall<Q, R>> started = calls(method);
+        return started.isEmpty() ? null : started.get(started.size() - 1);
+    }
+
+    public static class FakeCall<Q, R> extends ClientCall<Q, R> {
+        private final MethodDescriptor<Q, R> method;
+        private final Function<Q, R> answer;
+        private final List<Q> sent = new ArrayList<>();
+        private volatile Listener<R> listener;
+        private volatile int requested;
+        private volatile boolean cancelled;
+        private volatile boolean halfClosed;
+        private volatile boolean closed;
+
+        FakeCall(MethodDescriptor<Q, R> method, Function<Q, R> answer) {
+            this.method = method;
+            this.answer = answer;
+        }
+
+        @Override
+        public void start(Listener<R> listener, Metadata headers) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void request(int n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void halfClose() {
+            halfClosed = true;
+            if (answer != null) {
+                R response;
+                try {
+                    response = answer.apply(getSent().get(0));
+                } catch (StatusRuntimeException e) {
+                    close(e.getStatus());
+                    return;
+                }
+                respond(response);
+            }
+        }
+
+        @Override
+        public void sendMessage(Q message) {
+            synchronized (sent) {
+                sent.add(message);
+            }
+        }
+
+        public List<Q> getSent() {
+            synchronized (sent) {
+                return new ArrayList<>(sent);
+            }
+        }
+
+        public int getRequested() {
+            return requested;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isHalfClosed() {
+            return halfClosed;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Deliver a message from the server
+         */
+        public void reply(R message) {
+            listener.onMessage(message);
+        }
+
+        /**
+         * Deliver the only message of a unary call and close it
+         */
+        public void respond(R message) {
+            reply(message);
+            close(Status.OK);
+        }
+
+        public void close(Status status) {
+            closed = true;
+            listener.onClose(status, new Metadata());
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import org.hyperledger.api.SubmitResult;
+import org.hyperledger.transaction.Transaction;
+import org.hyperledger.transaction.TransactionTest;
+import org.junit.Test;
+import protos.Api;
+import protos.Fabric;
+import protos.OpenchainGrpc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GRPCAsyncClientTest {
+    private final FakeChannel channel = new FakeChannel("peer:7051");
+    private final GRPCAsyncClient client = new GRPCAsyncClient(channel);
+
+    private static Fabric.Response response(Fabric.Response.StatusCode status, String message) {
+        return Fabric.Response.newBuilder().setStatus(status).setMsg(ByteString.copyFromUtf8(message)).build();
+    }
+
+    private List<FakeChannel.FakeCall<InvokeTransaction, Fabric.Response>> submissions() {
+        return channel.calls(InvokeTransaction.METHOD_PROCESS_TRANSACTION);
+    }
+
+    @Test
+    public void sendTransactionsKeepsWindowInFlight() {
+        client.setSubmitWindow(4);
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            transactions.add(TransactionTest.randomTx());
+        }
+        CompletableFuture<List<SubmitResult>> results = client.sendTransactions(transactions);
+        assertEquals(4, submissions().size());
+
+        // completions in any order each start the next submission
+        submissions().get(2).respond(response(Fabric.Response.StatusCode.SUCCESS, ""));
+        assertEquals(5, submissions().size());
+        submissions().get(0).respond(response(Fabric.Response.StatusCode.SUCCESS, ""));
+        submissions().get(1).close(Status.UNAVAILABLE.withDescription("peer down"));
+        assertEquals(7, submissions().size());
+        for (int i = 3; i < 10; i++) {
+            assertFalse(results.isDone());
+            submissions().get(i).respond(i == 5
+                    ? response(Fabric.Response.StatusCode.FAILURE, "invalid")
+                    : response(Fabric.Response.StatusCode.SUCCESS, ""));
+        }
+        assertEquals(10, submissions().size());
+
+        List<SubmitResult> submitted = results.join();
+        assertEquals(transactions.size(), submitted.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            SubmitResult result = submitted.get(i);
+            assertEquals(transactions.get(i).getID(), result.getID());
+            assertEquals(i != 1 && i != 5, result.isAccepted());
+        }
+        assertEquals(SubmitResult.FAILURE, submitted.get(5).getStatus());
+        assertEquals("invalid", submitted.get(5).getMessage());
+        assertTrue(submitted.get(1).getMessage().contains("peer down"));
+    }
+
+    @Test
+    public void sendTransactionsSubmitsInOrder() {
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            transactions.add(TransactionTest.randomTx());
+        }
+        CompletableFuture<List<SubmitResult>> results = client.sendTransactions(transactions);
+        List<FakeChannel.FakeCall<InvokeTransaction, Fabric.Response>> calls = submissions();
+        assertEquals(3, calls.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(transactions.get(i).getID().toString(), calls.get(i).getSent().get(0).getTxid());
+            calls.get(i).respond(response(Fabric.Response.StatusCode.SUCCESS, ""));
+        }
+        assertTrue(results.join().stream().allMatch(SubmitResult::isAccepted));
+    }
+
+    @Test
+    public void sendNoTransactions() {
+        assertTrue(client.sendTransactions(new ArrayList<>()).join().isEmpty());
+        assertTrue(submissions().isEmpty());
+    }
+
+    private static final class HedgedPeers {
+        final FakeChannel a = new FakeChannel("a:7051");
+        final FakeChannel b = new FakeChannel("b:7051");
+        final GRPCAsyncClient client = new GRPCAsyncClient(new PeerPool(Arrays.asList(
+                new PeerPool.Peer("a:7051", a), new PeerPool.Peer("b:7051", b))));
+        final HedgingPolicy policy;
+
+        HedgedPeers(long delayMillis) {
+            policy = new HedgingPolicy(0.95, delayMillis, TimeUnit.MILLISECONDS);
+            client.setHedgingPolicy(policy);
+        }
+
+        List<FakeChannel.FakeCall<com.google.protobuf.Empty, Api.BlockCount>> calls(FakeChannel channel) {
+            return channel.calls(OpenchainGrpc.METHOD_GET_BLOCK_COUNT);
+        }
+
+        FakeChannel.FakeCall<com.google.protobuf.Empty, Api.BlockCount> primary() {
+            return calls(a).isEmpty() ? calls(b).get(0) : calls(a).get(0);
+        }
+
+        // waits for the hedge, on the peer other than the primary's
+        FakeChannel.FakeCall<com.google.protobuf.Empty, Api.BlockCount> hedge() throws InterruptedException {
+            FakeChannel other = calls(a).isEmpty() ? a : b;
+            for (int i = 0; i < 500 && calls(other).isEmpty(); i++) {
+                Thread.sleep(10);
+            }
+            return calls(other).get(0);
+        }
+    }
+
+    private static Api.BlockCount count(long count) {
+        return Api.BlockCount.newBuilder().setCount(count).build();
+    }
+
+    @Test
+    public void primaryAnsweringInTimeIsNotHedged() throws InterruptedException {
+        HedgedPeers peers = new HedgedPeers(50);
+        CompletableFuture<Integer> height = peers.client.getChainHeight();
+        peers.primary().respond(count(7));
+        assertEquals(7, (int) height.join());
+        Thread.sleep(100);
+        assertEquals(1, peers.calls(peers.a).size() + peers.calls(peers.b).size());
+        assertEquals(0, peers.policy.getHedgesSent());
+    }
+
+    @Test
+    public void hedgeWins() throws InterruptedException {
+        HedgedPeers peers = new HedgedPeers(10);
+        CompletableFuture<Integer> height = peers.client.getChainHeight();
+        FakeChannel.FakeCall<com.google.protobuf.Empty, Api.BlockCount> primary = peers.primary();
+        peers.hedge().respond(count(8));
+        assertEquals(8, (int) height.join());
+        assertEquals(1, peers.policy.getHedgesSent());
+        assertEquals(1, peers.policy.getHedgesWon());
+
+        primary.respond(count(7));
+        assertEquals(8, (int) height.join());
+        assertEquals(1, peers.policy.getHedgesWon());
+    }
+
+    @Test
+    public void earlyPrimaryFailureSendsHedgeAtOnce() {
+        HedgedPeers peers = new HedgedPeers(TimeUnit.MINUTES.toMillis(1));
+        CompletableFuture<Integer> height = peers.client.getChainHeight();
+        FakeChannel.FakeCall<com.google.protobuf.Empty, Api.BlockCount> primary = peers.primary();
+        primary.close(Status.UNAVAILABLE);
+        assertFalse(height.isDone());
+        assertEquals(1, peers.policy.getHedgesSent());
+
+        FakeChannel other = peers.calls(peers.a).contains(primary) ? peers.b : peers.a;
+        assertEquals(1, peers.calls(other).size());
+        peers.calls(other).get(0).respond(count(9));
+        assertEquals(9, (int) height.join());
+    }
+
+    @Test
+    public void answeredFailureIsNotHedged() throws InterruptedException {
+        HedgedPeers peers = new HedgedPeers(10);
+        CompletableFuture<Integer> height = peers.client.getChainHeight();
+        peers.primary().close(Status.UNKNOWN.withDescription("ledger: resource not found"));
+        try {
+            height.join();
+            fail("read should fail with the answer of the primary");
+        } catch (CompletionException e) {
+            assertEquals(Status.Code.UNKNOWN, Status.fromThrowable(e.getCause()).getCode());
+        }
+        Thread.sleep(50);
+        assertEquals(1, peers.calls(peers.a).size() + peers.calls(peers.b).size());
+        assertEquals(0, peers.policy.getHedgesSent());
+    }
+
+    @Test
+    public void failsIfPrimaryAndHedgeFail() {
+        HedgedPeers peers = new HedgedPeers(TimeUnit.MINUTES.toMillis(1));
+        CompletableFuture<Integer> height = peers.client.getChainHeight();
+        FakeChannel.FakeCall<com.google.protobuf.Empty, Api.BlockCount> primary = peers.primary();
+        primary.close(Status.UNAVAILABLE);
+        FakeChannel other = peers.calls(peers.a).contains(primary) ? peers.b : peers.a;
+        peers.calls(other).get(0).close(Status.INTERNAL);
+        try {
+            height.join();
+            fail("read should fail once every call failed");
+        } catch (CompletionException e) {
+            assertEquals(Status.Code.INTERNAL, Status.fromThrowable(e.getCause()).getCode());
+        }
+        assertEquals(1, peers.calls(peers.a).size());
+        assertEquals(1, peers.calls(peers.b).size());
+    }
+}
@@ -20,6 +20,7 @@ import org.hyperledger.api.HLAPI;
 import org.hyperledger.api.HLAPIBlock;
 import org.hyperledger.api.HLAPIException;
 import org.hyperledger.api.HLAPITransaction;
+import org.hyperledger.api.SubmitResult;
 import org.hyperledger.transaction.TID;
 import org.hyperledger.transaction.Transaction;
 import org.hyperledger.transaction.TransactionTest;
@@ -29,6 +30,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.*;
@@ -74,6 +77,20 @@ public class GRPCClientTest {
         assertEquals(originalHeight + 1, newHeight);
     }
 
+    @Test
+    public void sendTransactions() throws HLAPIException {
+        List<Transaction> txs = Arrays.asList(TransactionTest.randomTx(), TransactionTest.randomTx(), TransactionTest.randomTx());
+
+        List<SubmitResult> results = client.sendTransactions(txs);
+
+        assertEquals(txs.size(), results.size());
+        for (int i = 0; i < txs.size(); i++) {
+            assertEquals(txs.get(i).getID(), results.get(i).getID());
+            assertTrue(results.get(i).isAccepted());
+            assertEquals(txs.get(i), client.getTransaction(txs.get(i).getID()));
+        }
+    }
+
     @Test
     public void transactionListener() throws HLAPIException, InterruptedException, ExecutionException {
         MeasurableTransaction tx1 = new MeasurableTransaction(TransactionTest.randomTx(), unlimited);
@@ -0,0 +1,572 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import io.grpc.Status;
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.api.RejectListener;
+import org.hyperledger.api.TransactionListener;
+import org.hyperledger.api.TrunkListener;
+import org.hyperledger.block.BID;
+import org.hyperledger.common.Hash;
+import org.junit.Test;
+import protos.Chaincodeevent.ChaincodeEvent;
+import protos.EventsGrpc;
+import protos.EventsOuterClass.ChaincodeReg;
+import protos.EventsOuterClass.Event;
+import protos.EventsOuterClass.EventType;
+import protos.EventsOuterClass.Interest;
+import protos.EventsOuterClass.Rejection;
+import protos.Fabric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+
+import static org.hyperledger.transaction.TransactionTest.randomTx;
+import static org.junit.Assert.*;
+
+public class GRPCObserverTest {
+    private final FakeChannel channel = new FakeChannel("peer:7053");
+    private final GRPCObserver observer = new GRPCObserver(channel);
+
+    {
+        observer.setExecutor(Runnable::run);
+    }
+
+    private static FakeChannel.FakeCall<Event, Event> stream(FakeChannel channel) {
+        return channel.lastCall(EventsGrpc.METHOD_CHAT);
+    }
+
+    private static Interest interest(EventType type) {
+        return Interest.newBuilder().setEventType(type).build();
+    }
+
+    private static List<Interest> registered(FakeChannel.FakeCall<Event, Event> stream, int message) {
+        Event sent = stream.getSent().get(message);
+        assertEquals(Event.EventCase.REGISTER, sent.getEventCase());
+        return sent.getRegister().getEventsList();
+    }
+
+    private static Event blockEvent(Fabric.Block block) {
+        return Event.newBuilder().setBlock(block).build();
+    }
+
+    // reconnects are scheduled at least 250 ms after a stream is lost
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static int streams(FakeChannel channel) {
+        return channel.calls(EventsGrpc.METHOD_CHAT).size();
+    }
+
+    /**
+     * Records the backfill requested and completes it when told
+     */
+    private static final class Backfill implements BiFunction<BID, TrunkListener, CompletableFuture<Void>> {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        volatile BID last;
+        volatile TrunkListener listener;
+
+        @Override
+        public CompletableFuture<Void> apply(BID last, TrunkListener listener) {
+            this.listener = listener;
+            this.last = last;
+            return done;
+        }
+
+        void deliver(Fabric.Block block, int height, BID previous) {
+            listener.trunkUpdate(Collections.singletonList(FabricConverter.toHLAPIBlock(block, height, previous, true)));
+        }
+    }
+
+    private static final class TwoSources {
+        final FakeChannel a = new FakeChannel("a:7053");
+        final FakeChannel b = new FakeChannel("b:7053");
+        final EventSource sourceA = new EventSource("a:7053", a);
+        final EventSource sourceB = new EventSource("b:7053", b);
+        final GRPCObserver observer = new GRPCObserver(Arrays.asList(sourceA, sourceB));
+
+        TwoSources() {
+            observer.setExecutor(Runnable::run);
+        }
+    }
+
+    @Test
+    public void reconnectDelayGrowsExponentiallyUpToMaximum() {
+        for (int i = 0; i < 100; i++) {
+            long first = GRPCObserver.reconnectDelay(0);
+            assertTrue(first >= 250 && first <= 500);
+            long third = GRPCObserver.reconnectDelay(2);
+            assertTrue(third >= 1000 && third <= 2000);
+            long late = GRPCObserver.reconnectDelay(1000);
+            assertTrue(late >= 30_000 && late <= 60_000);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresEventSource() {
+        new GRPCObserver(Collections.<EventSource>emptyList());
+    }
+
+    @Test
+    public void countsBlocksReceivedFirst() {
+        EventSource source = new EventSource("peer:7053", null);
+        source.received(true);
+        source.received(false);
+        source.received(true);
+        assertEquals(3, source.getBlocksReceived());
+        assertEquals(2, source.getBlocksFirst());
+    }
+
+    @Test
+    public void followsBlocksOfKnownHeightOnly() {
+        List<HLAPIBlock> trunk = new ArrayList<>();
+        List<HLAPIBlock> followed = new ArrayList<>();
+        observer.subscribeToBlocks(trunk::addAll);
+        observer.followBlocks(followed::addAll);
+        observer.connect();
+
+        stream(channel).reply(blockEvent(FabricBlocks.block(7, randomTx())));
+        assertEquals(1, trunk.size());
+        assertEquals(0, trunk.get(0).getHeight());
+        assertTrue(followed.isEmpty());
+
+        observer.setChainHeight(8);
+        stream(channel).reply(blockEvent(FabricBlocks.block(8, randomTx())));
+        assertEquals(2, trunk.size());
+        assertEquals(1, followed.size());
+        assertEquals(8, followed.get(0).getHeight());
+        assertSame(trunk.get(1), followed.get(0));
+    }
+
+    @Test
+    public void registersNothingBeforeConnect() {
+        observer.subscribeToBlocks(added -> {
+        });
+        assertTrue(channel.calls(EventsGrpc.METHOD_CHAT).isEmpty());
+        observer.connect();
+        assertEquals(1, channel.calls(EventsGrpc.METHOD_CHAT).size());
+        assertEquals(Collections.singletonList(interest(EventType.BLOCK)), registered(stream(channel), 0));
+        assertTrue(observer.isObservingBlocks());
+    }
+
+    @Test
+    public void registersAddedInterestsOnOpenStream() {
+        observer.connect();
+        assertTrue(channel.calls(EventsGrpc.METHOD_CHAT).isEmpty());
+
+        observer.subscribeToBlocks(added -> {
+        });
+        observer.subscribeToRejections((command, hash, reason, code) -> {
+        });
+        observer.subscribeToChaincodeEvents((chaincodeID, txID, eventName, payload) -> {
+        }, "mycc", "transfer.*");
+
+        assertEquals(1, channel.calls(EventsGrpc.METHOD_CHAT).size());
+        FakeChannel.FakeCall<Event, Event> stream = stream(channel);
+        assertEquals(3, stream.getSent().size());
+        assertEquals(Collections.singletonList(interest(EventType.BLOCK)), registered(stream, 0));
+        assertEquals(Collections.singletonList(interest(EventType.REJECTION)), registered(stream, 1));
+        assertEquals(Collections.singletonList(Interest.newBuilder()
+                .setEventType(EventType.CHAINCODE)
+                .setChaincodeRegInfo(ChaincodeReg.newBuilder().setChaincodeID("mycc").setEventName("transfer.*"))
+                .build()), registered(stream, 2));
+        assertFalse(stream.isCancelled());
+    }
+
+    @Test
+    public void replacesStreamIfInterestDropped() {
+        TrunkListener blocks = added -> {
+        };
+        RejectListener rejections = (command, hash, reason, code) -> {
+        };
+        observer.connect();
+        observer.subscribeToBlocks(blocks);
+        observer.subscribeToRejections(rejections);
+        FakeChannel.FakeCall<Event, Event> first = stream(channel);
+
+        observer.unsubscribeFromRejections(rejections);
+        assertTrue(first.isCancelled());
+        assertEquals(2, channel.calls(EventsGrpc.METHOD_CHAT).size());
+        FakeChannel.FakeCall<Event, Event> second = stream(channel);
+        assertEquals(1, second.getSent().size());
+        assertEquals(Collections.singletonList(interest(EventType.BLOCK)), registered(second, 0));
+
+        // events still arriving on the replaced stream are ignored
+        List<HLAPIBlock> delivered = new ArrayList<>();
+        observer.subscribeToBlocks(delivered::addAll);
+        first.reply(blockEvent(FabricBlocks.block(1, randomTx())));
+        assertTrue(delivered.isEmpty());
+        second.reply(blockEvent(FabricBlocks.block(1, randomTx())));
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void backfillsBlocksMissedWhileStreamReplaced() {
+        List<HLAPIBlock> delivered = new CopyOnWriteArrayList<>();
+        RejectListener rejections = (command, hash, reason, code) -> {
+        };
+        Backfill backfill = new Backfill();
+        observer.setBackfill(backfill);
+        observer.subscribeToBlocks(delivered::addAll);
+        observer.subscribeToRejections(rejections);
+        observer.connect();
+        observer.setChainHeight(5);
+        Fabric.Block five = FabricBlocks.block(5, randomTx());
+        stream(channel).reply(blockEvent(five));
+
+        observer.unsubscribeFromRejections(rejections);
+        assertEquals(FabricConverter.blockID(five), backfill.last);
+        assertEquals(2, streams(channel));
+
+        Fabric.Block six = FabricBlocks.block(6, randomTx());
+        Fabric.Block seven = FabricBlocks.block(7, randomTx());
+        stream(channel).reply(blockEvent(seven));
+        backfill.deliver(six, 6, FabricConverter.blockID(five));
+        backfill.done.complete(null);
+
+        assertEquals(3, delivered.size());
+        assertEquals(6, delivered.get(1).getHeight());
+        assertEquals(7, delivered.get(2).getHeight());
+        assertEquals(FabricConverter.blockID(seven), delivered.get(2).getID());
+        assertEquals(8, observer.getChainHeight());
+    }
+
+    @Test
+    public void resetsTipIfStreamReplacedWithoutBackfill() {
+        AtomicInteger resumed = new AtomicInteger();
+        RejectListener rejections = (command, hash, reason, code) -> {
+        };
+        observer.setBlocksResumed(resumed::incrementAndGet);
+        observer.subscribeToBlocks(added -> {
+        });
+        observer.subscribeToRejections(rejections);
+        observer.connect();
+        observer.setChainHeight(5);
+        stream(channel).reply(blockEvent(FabricBlocks.block(5, randomTx())));
+        assertEquals(6, observer.getChainHeight());
+
+        observer.unsubscribeFromRejections(rejections);
+        assertEquals(2, streams(channel));
+        assertEquals(-1, observer.getChainHeight());
+        assertEquals(2, resumed.get());
+        assertTrue(observer.isObservingBlocks());
+    }
+
+    @Test
+    public void closesStreamWithoutListeners() {
+        TrunkListener blocks = added -> {
+        };
+        TransactionListener transactions = tx -> {
+        };
+        observer.connect();
+        observer.subscribeToBlocks(blocks);
+        observer.subscribeToTransactions(transactions);
+        assertEquals(1, channel.calls(EventsGrpc.METHOD_CHAT).size());
+
+        observer.unsubscribeFromBlocks(blocks);
+        assertFalse(stream(channel).isCancelled());
+        observer.unsubscribeFromTransactions(transactions);
+        assertTrue(stream(channel).isCancelled());
+        assertEquals(1, channel.calls(EventsGrpc.METHOD_CHAT).size());
+        assertFalse(observer.isObservingBlocks());
+
+        observer.watchTransactions(Arrays.asList(randomTx().getID()), transactions);
+        assertEquals(2, channel.calls(EventsGrpc.METHOD_CHAT).size());
+        assertEquals(Collections.singletonList(interest(EventType.BLOCK)), registered(stream(channel), 0));
+    }
+
+    @Test
+    public void backfillsBlocksLostWithStream() throws Exception {
+        List<HLAPIBlock> delivered = new CopyOnWriteArrayList<>();
+        Backfill backfill = new Backfill();
+        observer.setBackfill(backfill);
+        observer.subscribeToBlocks(delivered::addAll);
+        observer.connect();
+        observer.setChainHeight(5);
+        Fabric.Block five = FabricBlocks.block(5, randomTx());
+        stream(channel).reply(blockEvent(five));
+        BID fiveID = FabricConverter.blockID(five);
+        assertEquals(fiveID, observer.getChainTip());
+
+        stream(channel).close(Status.UNAVAILABLE);
+        assertFalse(observer.isObservingBlocks());
+        await(() -> backfill.last != null);
+        assertEquals(fiveID, backfill.last);
+        assertEquals(2, streams(channel));
+        assertEquals(Collections.singletonList(interest(EventType.BLOCK)), registered(stream(channel), 0));
+        assertEquals(1, observer.getEventSources().get(0).getReconnects());
+
+        Fabric.Block six = FabricBlocks.block(6, randomTx());
+        Fabric.Block seven = FabricBlocks.block(7, randomTx());
+        backfill.deliver(six, 6, fiveID);
+        backfill.deliver(seven, 7, FabricConverter.blockID(six));
+        backfill.done.complete(null);
+        assertEquals(3, delivered.size());
+        assertEquals(6, delivered.get(1).getHeight());
+        assertEquals(7, delivered.get(2).getHeight());
+        assertEquals(8, observer.getChainHeight());
+        assertEquals(FabricConverter.blockID(seven), observer.getChainTip());
+    }
+
+    // connects, observes block 5 and loses the stream, returns once the backfill after block 5 was requested
+    private Fabric.Block loseStreamAfterBlock5(Backfill backfill, TrunkListener listener) throws InterruptedException {
+        observer.setBackfill(backfill);
+        observer.subscribeToBlocks(listener);
+        observer.connect();
+        observer.setChainHeight(5);
+        Fabric.Block five = FabricBlocks.block(5, randomTx());
+        stream(channel).reply(blockEvent(five));
+        stream(channel).close(Status.UNAVAILABLE);
+        await(() -> backfill.last != null);
+        return five;
+    }
+
+    @Test
+    public void buffersLiveEventsWhileBackfilling() throws Exception {
+        List<HLAPIBlock> delivered = new CopyOnWriteArrayList<>();
+        Backfill backfill = new Backfill();
+        Fabric.Block five = loseStreamAfterBlock5(backfill, delivered::addAll);
+        Fabric.Block six = FabricBlocks.block(6, randomTx());
+        Fabric.Block seven = FabricBlocks.block(7, randomTx());
+        Fabric.Block eight = FabricBlocks.block(8, randomTx());
+
+        // live blocks arrive on the new stream before the backfill is done, one of them is backfilled too
+        stream(channel).reply(blockEvent(six));
+        stream(channel).reply(blockEvent(eight));
+        assertEquals(1, delivered.size());
+
+        backfill.deliver(six, 6, FabricConverter.blockID(five));
+        backfill.deliver(seven, 7, FabricConverter.blockID(six));
+        assertEquals(3, delivered.size());
+        backfill.done.complete(null);
+
+        assertEquals(4, delivered.size());
+        int[] heights = {5, 6, 7, 8};
+        Fabric.Block[] blocks = {five, six, seven, eight};
+        for (int i = 0; i < heights.length; i++) {
+            assertEquals(heights[i], delivered.get(i).getHeight());
+            assertEquals(FabricConverter.blockID(blocks[i]), delivered.get(i).getID());
+        }
+        assertEquals(FabricConverter.blockID(seven), delivered.get(3).getPreviousID());
+        assertEquals(9, observer.getChainHeight());
+
+        // live delivery resumed
+        stream(channel).reply(blockEvent(FabricBlocks.block(9, randomTx())));
+        assertEquals(5, delivered.size());
+        assertEquals(9, delivered.get(4).getHeight());
+    }
+
+    @Test
+    public void drainsBacklogWithoutHoldingDeliveryLock() throws Exception {
+        List<HLAPIBlock> delivered = new CopyOnWriteArrayList<>();
+        Fabric.Block six = FabricBlocks.block(6, randomTx());
+        Fabric.Block seven = FabricBlocks.block(7, randomTx());
+        BID sixID = FabricConverter.blockID(six);
+        Backfill backfill = new Backfill();
+        loseStreamAfterBlock5(backfill, added -> {
+            delivered.addAll(added);
+            if (!added.get(0).getID().equals(sixID)) {
+                return;
+            }
+            // while the backlog is drained, another thread holds the observer and receives an event,
+            // and the listener changes interests, which needs the observer
+            CountDownLatch holding = new CountDownLatch(1);
+            Thread receiver = new Thread(() -> {
+                synchronized (observer) {
+                    holding.countDown();
+                    stream(channel).reply(blockEvent(seven));
+                }
+            });
+            receiver.setDaemon(true);
+            receiver.start();
+            try {
+                assertTrue(holding.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            observer.subscribeToRejections((command, hash, reason, code) -> {
+            });
+        });
+        stream(channel).reply(blockEvent(six));
+
+        Thread drainer = new Thread(() -> backfill.done.complete(null));
+        drainer.setDaemon(true);
+        drainer.start();
+        drainer.join(5000);
+        assertFalse("deadlocked draining the backlog", drainer.isAlive());
+        assertEquals(3, delivered.size());
+        assertEquals(6, delivered.get(1).getHeight());
+        assertEquals(7, delivered.get(2).getHeight());
+    }
+
+    @Test
+    public void subscribesWithReplayWhileEventThreadBlocked() throws Exception {
+        observer.setExecutor(task -> {
+            Thread thread = new Thread(task);
+            thread.setDaemon(true);
+            thread.start();
+        });
+        observer.setReplayBuffer(10, Long.MAX_VALUE);
+        CountDownLatch release = new CountDownLatch(1);
+        List<HLAPIBlock> replayed = new CopyOnWriteArrayList<>();
+        AtomicInteger updates = new AtomicInteger();
+        // the listener subscribes an other one with replay, while the event thread waits for room in its queue
+        observer.subscribeToBlocks(added -> {
+            if (updates.incrementAndGet() == 1) {
+                try {
+                    assertTrue(release.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                observer.subscribeToBlocks(replayed::addAll, 10);
+            }
+        }, OverflowPolicy.BLOCK, 1);
+        observer.connect();
+
+        Thread receiver = new Thread(() -> {
+            for (int i = 1; i <= 3; i++) {
+                stream(channel).reply(blockEvent(FabricBlocks.block(i, randomTx())));
+            }
+        });
+        receiver.setDaemon(true);
+        receiver.start();
+        await(() -> receiver.getState() == Thread.State.WAITING);
+        release.countDown();
+        receiver.join(5000);
+        assertFalse("deadlocked subscribing with replay", receiver.isAlive());
+        await(() -> updates.get() == 3);
+        await(() -> replayed.size() == 3);
+    }
+
+    @Test
+    public void resetsTipOfLostBlocksWithoutBackfill() throws Exception {
+        AtomicInteger resumed = new AtomicInteger();
+        observer.setBlocksResumed(resumed::incrementAndGet);
+        observer.subscribeToBlocks(added -> {
+        });
+        observer.connect();
+        assertEquals(1, resumed.get());
+        observer.setChainHeight(5);
+        stream(channel).reply(blockEvent(FabricBlocks.block(5, randomTx())));
+        assertEquals(6, observer.getChainHeight());
+
+        stream(channel).close(Status.UNAVAILABLE);
+        await(() -> resumed.get() == 2);
+        assertEquals(2, streams(channel));
+        assertEquals(-1, observer.getChainHeight());
+        assertTrue(observer.isObservingBlocks());
+    }
+
+    @Test
+    public void deliversBlockAsReceivedFirst() {
+        TwoSources two = new TwoSources();
+        List<HLAPIBlock> delivered = new ArrayList<>();
+        two.observer.subscribeToBlocks(delivered::addAll);
+        two.observer.connect();
+        assertEquals(Collections.singletonList(interest(EventType.BLOCK)), registered(stream(two.a), 0));
+        assertEquals(Collections.singletonList(interest(EventType.BLOCK)), registered(stream(two.b), 0));
+
+        Fabric.Block x = FabricBlocks.block(1, randomTx());
+        Fabric.Block y = FabricBlocks.block(2, randomTx());
+        stream(two.a).reply(blockEvent(x));
+        stream(two.b).reply(blockEvent(x));
+        stream(two.b).reply(blockEvent(y));
+        stream(two.a).reply(blockEvent(y));
+
+        assertEquals(2, delivered.size());
+        assertEquals(FabricConverter.blockID(x), delivered.get(0).getID());
+        assertEquals(FabricConverter.blockID(y), delivered.get(1).getID());
+        assertEquals(2, two.sourceA.getBlocksReceived());
+        assertEquals(1, two.sourceA.getBlocksFirst());
+        assertEquals(2, two.sourceB.getBlocksReceived());
+        assertEquals(1, two.sourceB.getBlocksFirst());
+    }
+
+    @Test
+    public void deliversRejectionsAndChaincodeEventsOnce() {
+        TwoSources two = new TwoSources();
+        List<Hash> rejected = new ArrayList<>();
+        List<String> chaincodeEvents = new ArrayList<>();
+        two.observer.subscribeToRejections((command, hash, reason, code) -> rejected.add(hash));
+        two.observer.subscribeToChaincodeEvents((chaincodeID, txID, eventName, payload) -> chaincodeEvents.add(txID), "mycc", "");
+        two.observer.connect();
+
+        org.hyperledger.transaction.Transaction tx = randomTx();
+        Event rejection = Event.newBuilder()
+                .setRejection(Rejection.newBuilder().setTx(FabricBlocks.invoke(tx)).setErrorMsg("invalid"))
+                .build();
+        Event chaincodeEvent = Event.newBuilder()
+                .setChaincodeEvent(ChaincodeEvent.newBuilder().setChaincodeID("mycc").setTxID("t1").setEventName("moved"))
+                .build();
+        for (FakeChannel channel : Arrays.asList(two.a, two.b)) {
+            stream(channel).reply(rejection);
+            stream(channel).reply(chaincodeEvent);
+        }
+
+        assertEquals(Collections.singletonList(tx.getID()), rejected);
+        assertEquals(Collections.singletonList("t1"), chaincodeEvents);
+
+        // a different reason is a different rejection
+        stream(two.b).reply(Event.newBuilder()
+                .setRejection(Rejection.newBuilder().setTx(FabricBlocks.invoke(tx)).setErrorMsg("expired"))
+                .build());
+        assertEquals(2, rejected.size());
+    }
+
+    @Test
+    public void reconnectsSourceWithoutBackfillWhileOtherObserves() throws Exception {
+        TwoSources two = new TwoSources();
+        Backfill backfill = new Backfill();
+        two.observer.setBackfill(backfill);
+        List<HLAPIBlock> delivered = new CopyOnWriteArrayList<>();
+        two.observer.subscribeToBlocks(delivered::addAll);
+        two.observer.connect();
+        two.observer.setChainHeight(3);
+        stream(two.a).reply(blockEvent(FabricBlocks.block(3, randomTx())));
+
+        stream(two.a).close(Status.UNAVAILABLE);
+        assertTrue(two.observer.isObservingBlocks());
+        stream(two.b).reply(blockEvent(FabricBlocks.block(4, randomTx())));
+        await(() -> streams(two.a) == 2);
+
+        assertNull(backfill.last);
+        assertEquals(1, two.sourceA.getReconnects());
+        assertEquals(0, two.sourceB.getReconnects());
+        assertEquals(1, streams(two.b));
+        assertEquals(Collections.singletonList(interest(EventType.BLOCK)), registered(stream(two.a), 0));
+        assertEquals(5, two.observer.getChainHeight());
+
+        stream(two.a).reply(blockEvent(FabricBlocks.block(5, randomTx())));
+        assertEquals(3, delivered.size());
+        assertEquals(5, delivered.get(2).getHeight());
+    }
+}
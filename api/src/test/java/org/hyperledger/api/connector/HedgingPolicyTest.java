@@ -0,0 +1,70 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class HedgingPolicyTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void delayStartsAtMinimum() {
+        HedgingPolicy policy = new HedgingPolicy(0.9, 5, TimeUnit.MILLISECONDS);
+        assertEquals(5, policy.getDelay(TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 63; i++) {
+            policy.record(100 * MILLI);
+        }
+        assertEquals(5, policy.getDelay(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void delayFollowsPercentile() {
+        HedgingPolicy policy = new HedgingPolicy(0.9, 1, TimeUnit.MILLISECONDS);
+        for (int i = 1; i <= 64; i++) {
+            policy.record(i * MILLI);
+        }
+        assertEquals(57, policy.getDelay(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void delayNotBelowMinimum() {
+        HedgingPolicy policy = new HedgingPolicy(0.5, 20, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 64; i++) {
+            policy.record(MILLI);
+        }
+        assertEquals(20, policy.getDelay(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void countsHedges() {
+        HedgingPolicy policy = new HedgingPolicy(0.9, 1, TimeUnit.MILLISECONDS);
+        policy.hedgeSent();
+        policy.hedgeSent();
+        policy.hedgeWon();
+        assertEquals(2, policy.getHedgesSent());
+        assertEquals(1, policy.getHedgesWon());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentileMustBeBelowOne() {
+        new HedgingPolicy(1, 1, TimeUnit.MILLISECONDS);
+    }
+}
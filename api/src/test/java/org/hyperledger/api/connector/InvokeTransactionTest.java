@@ -0,0 +1,90 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import org.hyperledger.transaction.Transaction;
+import org.hyperledger.transaction.TransactionTest;
+import org.junit.Test;
+import protos.Chaincode;
+import protos.Fabric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class InvokeTransactionTest {
+    private final Transaction transaction = TransactionTest.randomTx();
+    private final InvokeTransaction invocation = new InvokeTransaction(transaction);
+
+    private Fabric.Transaction built() {
+        Chaincode.ChaincodeInvocationSpec spec = Chaincode.ChaincodeInvocationSpec.newBuilder()
+                .setChaincodeSpec(Chaincode.ChaincodeSpec.newBuilder()
+                        .setChaincodeID(Chaincode.ChaincodeID.newBuilder().setName(Transaction.chaincodeName))
+                        .setCtorMsg(Chaincode.ChaincodeInput.newBuilder().addArgs(transaction.toByteString())))
+                .setIdGenerationAlg("sha256")
+                .build();
+        return Fabric.Transaction.newBuilder()
+                .setType(Fabric.Transaction.Type.CHAINCODE_INVOKE)
+                .setTxid(transaction.getID().toString())
+                .setPayload(spec.toByteString())
+                .build();
+    }
+
+    @Test
+    public void encodesAsBuiltMessage() throws Exception {
+        ByteString encoded = invocation.toByteString();
+        assertEquals(invocation.getSerializedSize(), encoded.size());
+        assertEquals(built().toByteString(), encoded);
+
+        Fabric.Transaction parsed = Fabric.Transaction.parseFrom(encoded);
+        assertEquals(Fabric.Transaction.Type.CHAINCODE_INVOKE, parsed.getType());
+        assertEquals(transaction.getID().toString(), parsed.getTxid());
+        Chaincode.ChaincodeSpec spec = Chaincode.ChaincodeInvocationSpec.parseFrom(parsed.getPayload()).getChaincodeSpec();
+        assertEquals(Transaction.chaincodeName, spec.getChaincodeID().getName());
+        assertEquals(transaction.toByteString(), spec.getCtorMsg().getArgs(0));
+    }
+
+    @Test
+    public void streamIsDrained() throws Exception {
+        InputStream stream = InvokeTransaction.METHOD_PROCESS_TRANSACTION.streamRequest(invocation);
+        assertTrue(stream instanceof Drainable);
+        assertEquals(invocation.getSerializedSize(), ((KnownLength) stream).available());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(invocation.getSerializedSize(), ((Drainable) stream).drainTo(out));
+        assertArrayEquals(built().toByteArray(), out.toByteArray());
+        assertEquals(0, stream.available());
+        assertEquals(-1, stream.read());
+    }
+
+    @Test
+    public void streamIsRead() throws Exception {
+        InputStream stream = InvokeTransaction.METHOD_PROCESS_TRANSACTION.streamRequest(invocation);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(stream.read());
+        byte[] buffer = new byte[7];
+        int n;
+        while ((n = stream.read(buffer, 0, buffer.length)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        assertArrayEquals(built().toByteArray(), out.toByteArray());
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.api.HLAPITransaction;
+import org.hyperledger.block.BID;
+import org.hyperledger.transaction.TransactionTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LedgerCacheTest {
+
+    private static HLAPITransaction randomTx() {
+        return new HLAPITransaction(TransactionTest.randomTx(), BID.INVALID);
+    }
+
+    @Test
+    public void blockFeedsTransactions() {
+        LedgerCache cache = new LedgerCache(1024 * 1024);
+        HLAPITransaction tx1 = randomTx();
+        HLAPITransaction tx2 = randomTx();
+        HLAPIBlock block = new HLAPIBlock.Builder().transactions(tx1, tx2).build();
+
+        cache.trunkUpdate(Collections.singletonList(block));
+
+        assertEquals(tx1, cache.getTransaction(tx1.getID()));
+        assertEquals(tx2, cache.getTransaction(tx2.getID()));
+        assertNull(cache.getTransaction(randomTx().getID()));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void boundedByWeight() {
+        LedgerCache cache = new LedgerCache(10 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            cache.putTransaction(randomTx());
+        }
+        assertTrue(cache.getWeightedSize() <= cache.getMaximumWeight());
+        assertTrue(cache.getEvictionCount() > 0);
+        assertEquals(1000 - cache.getEvictionCount(), cache.size());
+    }
+
+    @Test
+    public void frequentlyUsedSurvivesScan() {
+        LedgerCache cache = new LedgerCache(20 * 1024);
+        List<HLAPITransaction> popular = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            HLAPITransaction tx = randomTx();
+            popular.add(tx);
+            cache.putTransaction(tx);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (HLAPITransaction tx : popular) {
+                cache.getTransaction(tx.getID());
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            cache.putTransaction(randomTx());
+        }
+        for (HLAPITransaction tx : popular) {
+            assertNotNull(cache.getTransaction(tx.getID()));
+        }
+    }
+}
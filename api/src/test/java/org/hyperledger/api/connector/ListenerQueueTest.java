@@ -0,0 +1,118 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ListenerQueueTest {
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final Executor manual = tasks::add;
+    private final ExecutorService pool = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutdownPool() {
+        pool.shutdownNow();
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    @Test
+    public void deliversInOrderDespiteFailures() throws InterruptedException {
+        List<Integer> delivered = new ArrayList<>();
+        ListenerQueue<Object> queue = new ListenerQueue<>(new Object(), pool, OverflowPolicy.BLOCK, 4);
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 100; i++) {
+            int n = i;
+            assertTrue(queue.offer(() -> {
+                if (n == 50) {
+                    throw new IllegalStateException("listener failure");
+                }
+                delivered.add(n);
+                if (n == 99) {
+                    done.countDown();
+                }
+            }));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(99, delivered.size());
+        for (int i = 1; i < delivered.size(); i++) {
+            assertTrue(delivered.get(i - 1) < delivered.get(i));
+        }
+    }
+
+    @Test
+    public void dropOldestKeepsNewest() {
+        List<Integer> delivered = new ArrayList<>();
+        ListenerQueue<Object> queue = new ListenerQueue<>(new Object(), manual, OverflowPolicy.DROP_OLDEST, 2);
+        for (int i = 0; i < 5; i++) {
+            int n = i;
+            assertTrue(queue.offer(() -> delivered.add(n)));
+        }
+        assertEquals(2, queue.getDepth());
+        assertEquals(3, queue.getDropped());
+        runTasks();
+        assertEquals(Arrays.asList(3, 4), delivered);
+    }
+
+    @Test
+    public void disconnectRefusesEvents() {
+        ListenerQueue<Object> queue = new ListenerQueue<>(new Object(), manual, OverflowPolicy.DISCONNECT, 2);
+        assertTrue(queue.offer(() -> {
+        }));
+        assertTrue(queue.offer(() -> {
+        }));
+        assertFalse(queue.offer(() -> {
+        }));
+        assertEquals(0, queue.getDepth());
+        runTasks();
+        assertFalse(queue.offer(() -> {
+        }));
+    }
+
+    @Test
+    public void interruptWhileBlockedDisconnects() {
+        ListenerQueue<Object> queue = new ListenerQueue<>(new Object(), manual, OverflowPolicy.BLOCK, 1);
+        assertTrue(queue.offer(() -> {
+        }));
+        Thread.currentThread().interrupt();
+        try {
+            assertFalse(queue.offer(() -> {
+            }));
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(0, queue.getDepth());
+        assertFalse(queue.offer(() -> {
+        }));
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class ListenerRegistryTest {
+    private final Executor direct = Runnable::run;
+
+    private ListenerQueue<String> queue(String listener) {
+        return new ListenerQueue<>(listener, direct, OverflowPolicy.BLOCK, 1);
+    }
+
+    @Test
+    public void addReplacesQueueOfSameListener() {
+        ListenerRegistry<String> registry = new ListenerRegistry<>();
+        ListenerQueue<String> first = queue("a");
+        assertNull(registry.add(first));
+        assertNull(registry.add(queue("b")));
+        assertSame(first, registry.add(queue("a")));
+        assertEquals(2, registry.snapshot().length);
+
+        registry.remove(first);
+        assertEquals(2, registry.snapshot().length);
+        assertNotNull(registry.remove("a"));
+        assertEquals(1, registry.snapshot().length);
+    }
+
+    @Test
+    public void concurrentRegistration() throws InterruptedException {
+        ListenerRegistry<String> registry = new ListenerRegistry<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String prefix = "t" + t + "-";
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    registry.add(queue(prefix + i));
+                    if (i % 2 == 0) {
+                        registry.remove(prefix + i);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(2000, registry.snapshot().length);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import io.grpc.Status;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PeerPoolTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static PeerPool.Peer peer(String address) {
+        return new PeerPool.Peer(address, new FakeChannel(address));
+    }
+
+    private static Map<PeerPool.Peer, Integer> selections(PeerPool pool, int n) {
+        Map<PeerPool.Peer, Integer> selected = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            selected.merge(pool.select(), 1, Integer::sum);
+        }
+        return selected;
+    }
+
+    @Test
+    public void prefersLowerLatency() {
+        PeerPool.Peer fast = peer("fast:1");
+        PeerPool.Peer slow = peer("slow:1");
+        fast.succeeded(MILLI);
+        slow.succeeded(100 * MILLI);
+        PeerPool pool = new PeerPool(Arrays.asList(fast, slow));
+        assertEquals(1000, (int) selections(pool, 1000).get(fast));
+    }
+
+    @Test
+    public void newPeerAssumedAtMeanLatency() {
+        PeerPool.Peer fast = peer("fast:1");
+        PeerPool.Peer slow = peer("slow:1");
+        PeerPool.Peer fresh = peer("fresh:1");
+        fast.succeeded(MILLI);
+        slow.succeeded(100 * MILLI);
+        PeerPool pool = new PeerPool(Arrays.asList(fast, slow, fresh));
+
+        // the fresh peer wins against the slow one only, rather than against both
+        Map<PeerPool.Peer, Integer> selected = selections(pool, 3000);
+        assertNull(selected.get(slow));
+        assertTrue(selected.get(fresh) < selected.get(fast));
+        assertTrue(selected.get(fresh) > 500);
+    }
+
+    @Test
+    public void ejectsFailingPeer() {
+        PeerPool.Peer failing = peer("failing:1");
+        PeerPool.Peer healthy = peer("healthy:1");
+        PeerPool pool = new PeerPool(Arrays.asList(failing, healthy));
+        pool.setMaxFailures(2);
+        for (int i = 0; i < 2; i++) {
+            pool.call(failing, p -> CompletableFutures.failed(Status.UNAVAILABLE.asRuntimeException()));
+        }
+        assertTrue(failing.isEjected());
+        assertFalse(healthy.isEjected());
+        assertEquals(100, (int) selections(pool, 100).get(healthy));
+        assertSame(healthy, pool.select(failing));
+    }
+
+    @Test
+    public void applicationErrorsDoNotEject() {
+        PeerPool.Peer peer = peer("peer:1");
+        PeerPool pool = new PeerPool(Arrays.asList(peer, peer("other:1")));
+        pool.setMaxFailures(1);
+        pool.call(peer, p -> CompletableFutures.failed(Status.NOT_FOUND.asRuntimeException()));
+        assertFalse(peer.isEjected());
+        assertEquals(0, peer.getInFlight());
+    }
+
+    @Test
+    public void selectsEjectedPeersIfNoneLeft() {
+        PeerPool.Peer only = peer("only:1");
+        PeerPool pool = new PeerPool(Arrays.asList(only, peer("other:1")));
+        for (PeerPool.Peer peer : pool.getPeers()) {
+            peer.failed(1, TimeUnit.MINUTES.toNanos(1));
+        }
+        assertNotNull(pool.select());
+        assertSame(only, pool.select(pool.getPeers().get(1)));
+    }
+
+    @Test
+    public void readmittedPeerEjectedOnlyAfterMaxFailuresAgain() throws InterruptedException {
+        PeerPool.Peer peer = peer("peer:1");
+        peer.failed(3, MILLI);
+        peer.failed(3, MILLI);
+        peer.failed(3, MILLI);
+        assertTrue(peer.isEjected());
+        Thread.sleep(5);
+        assertFalse(peer.isEjected());
+
+        peer.failed(3, TimeUnit.MINUTES.toNanos(1));
+        assertFalse(peer.isEjected());
+        peer.failed(3, TimeUnit.MINUTES.toNanos(1));
+        assertFalse(peer.isEjected());
+        peer.failed(3, TimeUnit.MINUTES.toNanos(1));
+        assertTrue(peer.isEjected());
+    }
+
+    @Test
+    public void successReadmits() {
+        PeerPool.Peer peer = peer("peer:1");
+        peer.failed(1, TimeUnit.MINUTES.toNanos(1));
+        assertTrue(peer.isEjected());
+        new PeerPool(Arrays.asList(peer)).call(peer, p -> CompletableFuture.completedFuture(null));
+        assertFalse(peer.isEjected());
+        assertTrue(peer.getLatencyMillis() >= 0);
+    }
+}
@@ -17,19 +17,28 @@
 package org.hyperledger.api.connector;
 
 import com.google.common.base.Stopwatch;
+import io.grpc.ManagedChannel;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
 import org.hyperledger.api.HLAPI;
 import org.hyperledger.api.HLAPIException;
 import org.hyperledger.api.RejectListener;
+import org.hyperledger.api.SubmitResult;
 import org.hyperledger.api.TransactionListener;
+import org.hyperledger.block.BID;
 import org.hyperledger.transaction.TID;
 import org.hyperledger.transaction.Transaction;
 import org.hyperledger.transaction.TransactionTest;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
+import protos.Chaincode;
+import protos.Fabric;
 
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -96,6 +105,94 @@ public class PerfTest {
         printResults(totalTime, results, multipleNotifications, notFound);
     }
 
+    /**
+     * Compares unary ProcessTransaction submission with the Peer.Chat stream.
+     * Runs only against a real peer, e.g. mvn test -Dtest=PerfTest -Dhyperledger.peer=localhost:30303
+     */
+    @Test
+    public void unaryVersusStreamSubmission() throws ExecutionException, InterruptedException {
+        String peer = System.getProperty("hyperledger.peer");
+        Assume.assumeNotNull(peer);
+        String[] hostPort = peer.split(":");
+        ManagedChannel channel = NettyChannelBuilder.forAddress(hostPort[0], Integer.parseInt(hostPort[1]))
+                .negotiationType(NegotiationType.PLAINTEXT).build();
+        GRPCAsyncClient client = new GRPCAsyncClient(channel);
+
+        println("====== Submission results ======\n");
+        for (boolean streaming : new boolean[]{false, true}) {
+            List<Transaction> transactions = new ArrayList<>(SIZE);
+            for (int i = 0; i < SIZE; i++) {
+                transactions.add(TransactionTest.randomTx());
+            }
+            client.setStreamingSubmission(streaming);
+
+            Stopwatch submitTime = Stopwatch.createStarted();
+            List<SubmitResult> results = client.sendTransactions(transactions).get();
+            submitTime.stop();
+
+            long accepted = results.stream().filter(SubmitResult::isAccepted).count();
+            double seconds = submitTime.elapsed(TimeUnit.MILLISECONDS) / 1000.0;
+            println("%-26s %d of %d accepted in %.2f sec, %.2f tx/sec", streaming ? "Peer.Chat stream:" : "unary ProcessTransaction:",
+                    accepted, SIZE, seconds, SIZE / seconds);
+        }
+        channel.shutdown();
+    }
+
+    /**
+     * Compares decoding blocks on the event thread with decoding them in parallel, to find the block size
+     * from which parallel decoding pays off. Runs only if asked, e.g. mvn test -Dtest=PerfTest -Dhyperledger.benchmark=true
+     */
+    @Test
+    public void sequentialVersusParallelDecoding() {
+        Assume.assumeTrue(Boolean.getBoolean("hyperledger.benchmark"));
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int rounds = 20;
+
+        println("====== Block decoding results ======\n");
+        println("%8s %14s %14s", "txs", "sequential ms", "parallel ms");
+        for (int size : new int[]{10, 30, 100, 300, 1000, 3000, 10000}) {
+            Fabric.Block.Builder builder = Fabric.Block.newBuilder();
+            for (int i = 0; i < size; i++) {
+                builder.addTransactions(toFabricTransaction(TransactionTest.randomTx()));
+            }
+            Fabric.Block block = builder.build();
+            BID id = FabricConverter.blockID(block);
+
+            // warm up both paths before measuring
+            for (int i = 0; i < 5; i++) {
+                FabricConverter.toHLAPIBlock(block, id, 1, BID.INVALID, true).getTransactions().forEach(Transaction::getInputs);
+                FabricConverter.toHLAPIBlock(block, id, 1, BID.INVALID, pool, 256);
+            }
+            Stopwatch sequential = Stopwatch.createStarted();
+            for (int i = 0; i < rounds; i++) {
+                FabricConverter.toHLAPIBlock(block, id, 1, BID.INVALID, true).getTransactions().forEach(Transaction::getInputs);
+            }
+            sequential.stop();
+            Stopwatch parallel = Stopwatch.createStarted();
+            for (int i = 0; i < rounds; i++) {
+                FabricConverter.toHLAPIBlock(block, id, 1, BID.INVALID, pool, 256);
+            }
+            parallel.stop();
+            println("%8d %14.2f %14.2f", size, sequential.elapsed(TimeUnit.MICROSECONDS) / 1000.0 / rounds,
+                    parallel.elapsed(TimeUnit.MICROSECONDS) / 1000.0 / rounds);
+        }
+    }
+
+    private static Fabric.Transaction toFabricTransaction(Transaction transaction) {
+        Chaincode.ChaincodeInput input = Chaincode.ChaincodeInput.newBuilder()
+                .addArgs(transaction.toByteString())
+                .build();
+        Chaincode.ChaincodeSpec spec = Chaincode.ChaincodeSpec.newBuilder()
+                .setChaincodeID(Chaincode.ChaincodeID.newBuilder().setName(Transaction.chaincodeName))
+                .setCtorMsg(input)
+                .build();
+        return Fabric.Transaction.newBuilder()
+                .setType(Fabric.Transaction.Type.CHAINCODE_INVOKE)
+                .setTxid(transaction.getID().toString())
+                .setPayload(Chaincode.ChaincodeInvocationSpec.newBuilder().setChaincodeSpec(spec).build().toByteString())
+                .build();
+    }
+
     private List<Long> getResults() throws ExecutionException, InterruptedException {
         List<Long> results = new ArrayList<>();
         timoutCounter = 0;
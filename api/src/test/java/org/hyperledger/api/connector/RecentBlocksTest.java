@@ -0,0 +1,71 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.HLAPIBlock;
+import org.hyperledger.merkletree.MerkleRoot;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecentBlocksTest {
+    private static HLAPIBlock block(int height) {
+        return new HLAPIBlock.Builder().merkleRoot(MerkleRoot.INVALID).createTime(height).height(height).build();
+    }
+
+    @Test
+    public void keepsMostRecentBlocksByCount() {
+        RecentBlocks recent = new RecentBlocks(3, Long.MAX_VALUE);
+        for (int i = 0; i < 5; i++) {
+            recent.add(block(i));
+        }
+        assertEquals(3, recent.size());
+        List<HLAPIBlock> last = recent.last(10);
+        assertEquals(3, last.size());
+        assertEquals(2, last.get(0).getHeight());
+        assertEquals(4, last.get(2).getHeight());
+        assertEquals(4, recent.last(1).get(0).getHeight());
+        assertTrue(recent.last(0).isEmpty());
+    }
+
+    @Test
+    public void keepsMostRecentBlocksBySize() {
+        RecentBlocks recent = new RecentBlocks(100, 0);
+        recent.add(block(0));
+        assertEquals(0, recent.size());
+
+        recent.resize(100, 2 * 64);
+        for (int i = 0; i < 5; i++) {
+            recent.add(block(i));
+        }
+        assertEquals(2, recent.size());
+        assertEquals(2 * 64, recent.getBytes());
+
+        recent.resize(1, 2 * 64);
+        assertEquals(1, recent.size());
+        assertEquals(4, recent.last(5).get(0).getHeight());
+    }
+
+    @Test
+    public void disabledKeepsNothing() {
+        RecentBlocks recent = new RecentBlocks(0, Long.MAX_VALUE);
+        recent.add(block(0));
+        assertTrue(recent.last(1).isEmpty());
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.transaction.TID;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TransactionDedupTest {
+
+    private static final Random random = new Random(42);
+
+    private static TID randomTID() {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return new TID(bytes);
+    }
+
+    @Test
+    public void filterHasNoFalseNegativesUpToCapacity() {
+        CuckooFilter filter = new CuckooFilter(10000);
+        long[] hashes = new long[10000];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = random.nextLong();
+            assertTrue(filter.add(hashes[i]));
+        }
+        for (long hash : hashes) {
+            assertTrue(filter.mightContain(hash));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 5);
+    }
+
+    @Test
+    public void deliversOnce() {
+        TransactionDedup dedup = new TransactionDedup(10, 1000, 10);
+        TID[] ids = new TID[500];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = randomTID();
+            assertTrue(dedup.firstDelivery(ids[i], 1 + i / 100));
+        }
+        for (int i = 0; i < ids.length; i++) {
+            assertFalse(dedup.firstDelivery(ids[i], 1 + i / 100));
+        }
+        assertEquals(ids.length, dedup.getDropped());
+    }
+
+    @Test
+    public void dropsFilterHitOnlyBeforeExactRange() {
+        TransactionDedup dedup = new TransactionDedup(10, 1000, 10);
+        TID[] ids = new TID[20];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = randomTID();
+            assertTrue(dedup.firstDelivery(ids[i], 1 + i / 10));
+        }
+        // same hash, so a hit of the filters
+        TID evicted = collision(ids[0]);
+        TID kept = collision(ids[19]);
+        assertTrue(dedup.firstDelivery(kept, 2));
+        assertTrue(dedup.firstDelivery(collision(ids[1]), 3));
+        assertTrue(dedup.firstDelivery(collision(ids[2]), 0));
+        assertFalse(dedup.firstDelivery(evicted, 1));
+        assertEquals(1, dedup.getDropped());
+    }
+
+    private static TID collision(TID id) {
+        byte[] bytes = id.unsafeGetArray().clone();
+        bytes[31] ^= 1;
+        TID other = new TID(bytes);
+        assertEquals(TransactionDedup.hash(id), TransactionDedup.hash(other));
+        return other;
+    }
+
+    @Test
+    public void forgetsAfterTwoWindows() {
+        TransactionDedup dedup = new TransactionDedup(10, 1000, 0);
+        TID id = randomTID();
+        assertTrue(dedup.firstDelivery(id, 1));
+        assertTrue(dedup.firstDelivery(randomTID(), 11));
+        assertFalse(dedup.firstDelivery(id, 1));
+        assertTrue(dedup.firstDelivery(randomTID(), 21));
+        assertTrue(dedup.firstDelivery(id, 1));
+    }
+
+    @Test
+    public void retiresFullGeneration() {
+        TransactionDedup dedup = new TransactionDedup(0, 100, 0);
+        TID first = randomTID();
+        assertTrue(dedup.firstDelivery(first, 1));
+        for (int i = 0; i < 150; i++) {
+            assertTrue(dedup.firstDelivery(randomTID(), 2 + i));
+        }
+        assertFalse(dedup.firstDelivery(first, 1));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(dedup.firstDelivery(randomTID(), 152 + i));
+        }
+        assertTrue(dedup.firstDelivery(first, 1));
+    }
+
+    // an entry of index and fingerprint; the fingerprint selects the alternate bucket by its lowest two bits
+    private static long entry(int index, int fingerprint) {
+        return (long) fingerprint << 32 | index;
+    }
+
+    @Test
+    public void alternateIsSymmetric() {
+        CuckooFilter filter = new CuckooFilter(1000);
+        for (int i = 0; i < 10000; i++) {
+            int index = random.nextInt(256);
+            int fingerprint = random.nextInt();
+            assertEquals(index, filter.alternate(filter.alternate(index, fingerprint), fingerprint));
+        }
+    }
+
+    @Test
+    public void relocatesEntryIfBothBucketsFull() {
+        CuckooFilter filter = new CuckooFilter(8); // four buckets
+        List<Long> entries = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            entries.add(entry(0, i << 2 | 2)); // buckets 0 and 2
+            entries.add(entry(1, i << 2 | 3)); // buckets 1 and 2
+        }
+        // buckets 0 and 1, both full, one entry of bucket 1 moves to bucket 2
+        entries.add(entry(0, 5 << 2 | 1));
+        for (long entry : entries) {
+            assertTrue(filter.add(entry));
+        }
+        assertEquals(entries.size(), filter.size());
+        for (long entry : entries) {
+            assertTrue(filter.mightContain(entry));
+        }
+        assertTrue(filter.add(entry(3, 6 << 2)));
+    }
+
+    @Test
+    public void stashesLastVictimThenIsFull() {
+        CuckooFilter filter = new CuckooFilter(8);
+        List<Long> entries = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            entries.add(entry(0, i << 2 | 1)); // buckets 0 and 1
+        }
+        for (long entry : entries) {
+            assertTrue(filter.add(entry));
+        }
+        assertEquals(9, filter.size());
+        for (long entry : entries) {
+            assertTrue(filter.mightContain(entry));
+        }
+        assertFalse(filter.add(entry(3, 6 << 2)));
+        assertFalse(filter.mightContain(entry(3, 6 << 2)));
+        assertEquals(9, filter.size());
+    }
+}
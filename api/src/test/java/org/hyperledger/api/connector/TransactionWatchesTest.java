@@ -0,0 +1,87 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.api.connector;
+
+import org.hyperledger.api.HLAPITransaction;
+import org.hyperledger.api.TransactionListener;
+import org.hyperledger.block.BID;
+import org.hyperledger.transaction.TransactionTest;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class TransactionWatchesTest {
+    private final Executor direct = Runnable::run;
+    private final TransactionWatches watches = new TransactionWatches();
+
+    private ListenerQueue<TransactionListener> queue(TransactionListener l) {
+        return new ListenerQueue<>(l, direct, OverflowPolicy.BLOCK, 1);
+    }
+
+    private static HLAPITransaction randomTx() {
+        return new HLAPITransaction(TransactionTest.randomTx(), BID.INVALID);
+    }
+
+    @Test
+    public void takeMatchesWatchedTransactionsOnce() {
+        HLAPITransaction a = randomTx();
+        HLAPITransaction b = randomTx();
+        HLAPITransaction c = randomTx();
+        TransactionListener first = t -> {
+        };
+        TransactionListener second = t -> {
+        };
+        watches.watch(Arrays.asList(a.getID(), b.getID()), first, this::queue);
+        watches.watch(Collections.singletonList(b.getID()), second, this::queue);
+        assertEquals(2, watches.size());
+        assertEquals(2, watches.queues().size());
+
+        Map<ListenerQueue<TransactionListener>, List<HLAPITransaction>> matched = watches.take(Arrays.asList(a, b, c));
+        assertEquals(2, matched.size());
+        for (Map.Entry<ListenerQueue<TransactionListener>, List<HLAPITransaction>> e : matched.entrySet()) {
+            if (e.getKey().getListener() == first) {
+                assertEquals(Arrays.asList(a, b), e.getValue());
+            } else {
+                assertSame(second, e.getKey().getListener());
+                assertEquals(Collections.singletonList(b), e.getValue());
+            }
+        }
+        assertTrue(watches.isEmpty());
+        assertTrue(watches.queues().isEmpty());
+        assertTrue(watches.take(Arrays.asList(a, b)).isEmpty());
+    }
+
+    @Test
+    public void unwatchRemovesWatch() {
+        HLAPITransaction a = randomTx();
+        HLAPITransaction b = randomTx();
+        TransactionListener l = t -> {
+        };
+        watches.watch(Arrays.asList(a.getID(), b.getID()), l, this::queue);
+        watches.unwatch(Collections.singletonList(a.getID()), l);
+        assertEquals(1, watches.size());
+        assertEquals(1, watches.queues().size());
+
+        watches.unwatch(Collections.singletonList(b.getID()), l);
+        assertTrue(watches.isEmpty());
+        assertTrue(watches.queues().isEmpty());
+        assertTrue(watches.take(Arrays.asList(a, b)).isEmpty());
+    }
+}
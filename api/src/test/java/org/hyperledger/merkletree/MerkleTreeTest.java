@@ -0,0 +1,42 @@
+/**
+ * Copyright 2016 Digital Asset Holdings, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hyperledger.merkletree;
+
+import org.hyperledger.common.Hash;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class MerkleTreeTest {
+
+    @Test
+    public void parallelRootEqualsSequentialRoot() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<MerkleTreeNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            nodes.add(new PrunedNode(Hash.of(new byte[]{(byte) i, (byte) (i >> 8)}), 0));
+            for (int chunkSize : new int[]{2, 8, 64}) {
+                assertEquals("size " + nodes.size() + " chunk " + chunkSize,
+                        MerkleTree.computeMerkleRoot(nodes), MerkleTree.computeMerkleRoot(nodes, pool, chunkSize));
+            }
+        }
+    }
+}
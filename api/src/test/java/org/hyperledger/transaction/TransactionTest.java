@@ -40,6 +40,16 @@ public class TransactionTest {
         assertEquals(original, result);
     }
 
+    @Test
+    public void lazyDeserialization() {
+        Transaction original = randomTx();
+        Transaction result = Transaction.lazyFromByteString(original.toByteString());
+
+        assertEquals(original.getID(), result.getID());
+        assertArrayEquals(original.getOutputs().get(0), result.getOutputs().get(0));
+        assertEquals(original.getInputs(), result.getInputs());
+    }
+
     public static Transaction randomTx() {
         return new TransactionBuilder()
                 .input(new TID(randomBytes(32)))